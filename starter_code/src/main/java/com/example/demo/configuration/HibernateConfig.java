@@ -0,0 +1,19 @@
+package com.example.demo.configuration;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+
+@Configuration
+public class HibernateConfig {
+    /**
+     * Lets Hibernate create entity listeners through Spring, so that they can be autowired.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer springBeanContainer(ConfigurableListableBeanFactory beanFactory) {
+        return properties -> properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.demo.configuration;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thread-safe verifier for compact HS512 tokens.
+ * <p>
+ * The signing key is initialised once and each thread reuses its own {@link Mac} and scratch buffers. The token
+ * structure and the HMAC over the raw {@code header.payload} bytes are checked before any JSON is decoded, so
+ * malformed or forged tokens are rejected without decoding claims; verified claims are bound straight to small
+ * typed holders rather than generic maps.
+ */
+public class HmacJwtVerifier {
+    private static final String ALGORITHM = "HmacSHA512";
+
+    private static final String JWT_ALGORITHM = "HS512";
+
+    private static final int SIGNATURE_LENGTH = 64;
+
+    private static final int ENCODED_SIGNATURE_LENGTH = 86;
+
+    private static final byte[] BASE64_URL_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_URL_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final ThreadLocal<Worker> workers;
+
+    private final ObjectReader headerReader;
+
+    private final ObjectReader claimsReader;
+
+    public HmacJwtVerifier(byte[] secret) {
+        SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+        this.workers = ThreadLocal.withInitial(() -> new Worker(key));
+        ObjectMapper objectMapper = new ObjectMapper();
+        this.headerReader = objectMapper.readerFor(Header.class);
+        this.claimsReader = objectMapper.readerFor(Claims.class);
+    }
+
+    /**
+     * @return the verified identity, or {@code null} when the token is malformed, forged, not HS512 or expired
+     */
+    public VerifiedToken verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (headerEnd <= 0 || payloadEnd <= headerEnd + 1 || token.length() - payloadEnd - 1 != ENCODED_SIGNATURE_LENGTH) {
+            return null;
+        }
+
+        Worker worker = workers.get();
+        if (!worker.signatureMatches(token, payloadEnd)) {
+            return null;
+        }
+
+        try {
+            Header header = headerReader.readValue(decodeBase64Url(token, 0, headerEnd));
+            if (!JWT_ALGORITHM.equals(header.alg)) {
+                return null;
+            }
+            Claims claims = claimsReader.readValue(decodeBase64Url(token, headerEnd + 1, payloadEnd));
+            if (claims.exp == null || claims.sub == null) {
+                return null;
+            }
+            long expiresAt = claims.exp * 1000L;
+            if (expiresAt <= System.currentTimeMillis()) {
+                return null;
+            }
+            return new VerifiedToken(claims.uid, claims.sub,
+                    claims.auth == null ? Collections.<String>emptyList() : claims.auth, expiresAt);
+        } catch (IOException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static byte[] decodeBase64Url(String value, int from, int to) {
+        int length = to - from;
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64url length");
+        }
+        byte[] out = new byte[length * 3 / 4];
+        if (decodeBase64Url(value, from, to, out) != out.length) {
+            throw new IllegalArgumentException("Invalid base64url content");
+        }
+        return out;
+    }
+
+    /**
+     * Decodes unpadded base64url characters into {@code out}.
+     *
+     * @return the number of bytes written, or {@code -1} on an invalid character
+     */
+    private static int decodeBase64Url(String value, int from, int to, byte[] out) {
+        int bits = 0;
+        int bitCount = 0;
+        int written = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            int sextet = c < 128 ? BASE64_URL_VALUES[c] : -1;
+            if (sextet < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                if (written == out.length) {
+                    return -1;
+                }
+                out[written++] = (byte) (bits >> bitCount);
+            }
+        }
+        return written;
+    }
+
+    private static final class Worker {
+        private final Mac mac;
+
+        private final byte[] expected = new byte[SIGNATURE_LENGTH];
+
+        private final byte[] actual = new byte[SIGNATURE_LENGTH];
+
+        private byte[] signingInput = new byte[512];
+
+        private Worker(SecretKeySpec key) {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private boolean signatureMatches(String token, int payloadEnd) {
+            if (decodeBase64Url(token, payloadEnd + 1, token.length(), actual) != SIGNATURE_LENGTH) {
+                return false;
+            }
+            if (signingInput.length < payloadEnd) {
+                signingInput = new byte[Integer.highestOneBit(payloadEnd) << 1];
+            }
+            for (int i = 0; i < payloadEnd; i++) {
+                char c = token.charAt(i);
+                if (c >= 128) {
+                    return false;
+                }
+                signingInput[i] = (byte) c;
+            }
+            try {
+                mac.update(signingInput, 0, payloadEnd);
+                mac.doFinal(expected, 0);
+            } catch (GeneralSecurityException ex) {
+                mac.reset();
+                return false;
+            }
+            return MessageDigest.isEqual(expected, actual);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Header {
+        public String alg;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Claims {
+        public String sub;
+
+        @JsonProperty(JwtTokenProvider.CLAIM_USER_ID)
+        public Long uid;
+
+        @JsonProperty(JwtTokenProvider.CLAIM_AUTHORITIES)
+        public List<String> auth;
+
+        public Long exp;
+    }
+}
@@ -2,7 +2,10 @@ package com.example.demo.configuration;
 
 import com.example.demo.services.CustomUserDetails;
 import com.example.demo.services.CustomUserService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -17,34 +20,49 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    Logger logger = LogManager.getLogger(JwtAuthenticationFilter.class);
+
     @Autowired
     private JwtTokenProvider tokenProvider;
 
     @Autowired
     private CustomUserService customUserService;
 
+    /**
+     * When enabled the principal is rebuilt from the signed claims instead of being reloaded from the database.
+     */
+    @Value("${jwt.claims-authentication:true}")
+    private boolean claimsAuthentication;
+
     @Override
     protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = getJwtFromRequest(httpServletRequest);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromJWT(jwt);
-                UserDetails userDetails = customUserService.loadUserByUsername(username);
+            if (StringUtils.hasText(jwt)) {
+                VerifiedToken verifiedToken = tokenProvider.parseToken(jwt);
 
-                if (userDetails != null) {
+                if (verifiedToken != null) {
+                    UserDetails userDetails = loadUserDetails(verifiedToken);
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(httpServletRequest));
                     SecurityContextHolder.getContext().setAuthentication(authentication);
                 }
             }
         } catch (Exception ex) {
-            System.out.println("Failed on set user authentication");
+            logger.warn("Failed on set user authentication", ex);
         }
 
         filterChain.doFilter(httpServletRequest, httpServletResponse);
     }
 
+    private UserDetails loadUserDetails(VerifiedToken verifiedToken) {
+        if (claimsAuthentication && verifiedToken.hasIdentityClaims()) {
+            return new CustomUserDetails(verifiedToken.toUser(), verifiedToken.getAuthorities());
+        }
+        return customUserService.loadUserByUsername(verifiedToken.getUsername());
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
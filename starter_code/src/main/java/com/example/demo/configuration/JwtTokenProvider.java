@@ -1,51 +1,99 @@
 package com.example.demo.configuration;
 
 import com.example.demo.services.CustomUserDetails;
-import io.jsonwebtoken.*;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 @Component
 public class JwtTokenProvider {
-    private final String JWT_SECRET = "mySecretKey";
+    Logger logger = LogManager.getLogger(JwtTokenProvider.class);
 
-    private final long JWT_EXPIRATION = 3600000L;
+    public static final String CLAIM_USER_ID = "uid";
+
+    public static final String CLAIM_AUTHORITIES = "auth";
+
+    /**
+     * Access tokens are short-lived; clients renew them through the refresh token flow instead of logging in again.
+     */
+    @Value("${jwt.access-token.expiration-ms:900000}")
+    private long accessTokenExpiration;
+
+    /**
+     * Base64-encoded HMAC key, decoded the same way jjwt decodes string keys so existing tokens stay valid.
+     */
+    @Value("${secret.key}")
+    private String jwtSecret;
+
+    @Autowired
+    private VerifiedTokenCache tokenCache;
+
+    private byte[] signingKey;
+
+    private HmacJwtVerifier verifier;
+
+    @PostConstruct
+    public void init() {
+        signingKey = TextCodec.BASE64.decode(jwtSecret);
+        verifier = new HmacJwtVerifier(signingKey);
+    }
 
     public String generateToken(CustomUserDetails userDetails) {
         Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + JWT_EXPIRATION);
+        Date expiryDate = new Date(now.getTime() + accessTokenExpiration);
+
+        List<String> authorities = new ArrayList<>();
+        for (GrantedAuthority authority : userDetails.getAuthorities()) {
+            authorities.add(authority.getAuthority());
+        }
 
         return Jwts.builder()
                 .setSubject(userDetails.getUser().getUsername())
+                .claim(CLAIM_USER_ID, userDetails.getUser().getId())
+                .claim(CLAIM_AUTHORITIES, authorities)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(SignatureAlgorithm.HS512, JWT_SECRET)
+                .signWith(SignatureAlgorithm.HS512, signingKey)
                 .compact();
     }
 
-    public String getUsernameFromJWT(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(JWT_SECRET)
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Verifies the token and extracts its identity claims in a single parse. Tokens that were already verified
+     * are served from {@link VerifiedTokenCache} until they expire.
+     *
+     * @return the verified identity, or {@code null} when the token is invalid or expired
+     */
+    public VerifiedToken parseToken(String authToken) {
+        VerifiedToken cached = tokenCache.get(authToken);
+        if (cached != null) {
+            return cached;
+        }
+        VerifiedToken verifiedToken = verifier.verify(authToken);
+        if (verifiedToken == null) {
+            logger.debug("Invalid or expired JWT token");
+            return null;
+        }
+        tokenCache.put(authToken, verifiedToken);
+        return verifiedToken;
+    }
 
-        return claims.getSubject();
+    public String getUsernameFromJWT(String token) {
+        VerifiedToken verifiedToken = parseToken(token);
+        return verifiedToken == null ? null : verifiedToken.getUsername();
     }
 
     public boolean validateToken(String authToken) {
-        try {
-            Jwts.parser().setSigningKey(JWT_SECRET).parseClaimsJws(authToken);
-            return true;
-        } catch (MalformedJwtException ex) {
-            System.out.println("Invalid JWT token");
-        } catch (ExpiredJwtException ex) {
-            System.out.println("Expired JWT token");
-        } catch (UnsupportedJwtException ex) {
-            System.out.println("Unsupported JWT token");
-        } catch (IllegalArgumentException ex) {
-            System.out.println("JWT claims string is empty.");
-        }
-        return false;
+        return parseToken(authToken) != null;
     }
 }
@@ -0,0 +1,32 @@
+package com.example.demo.configuration;
+
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+
+/**
+ * {@link DelegatingPasswordEncoder} that also asks the BCrypt delegate whether a {@code {bcrypt}} hash was produced
+ * with an outdated work factor. Unprefixed hashes stored before the delegating format was enabled are matched as
+ * BCrypt and upgraded to the prefixed form.
+ */
+public class UpgradingDelegatingPasswordEncoder extends DelegatingPasswordEncoder {
+    private static final String BCRYPT_PREFIX = "{bcrypt}";
+
+    private final TunableBCryptPasswordEncoder bcrypt;
+
+    public UpgradingDelegatingPasswordEncoder(String idForEncode, Map<String, PasswordEncoder> encoders, TunableBCryptPasswordEncoder bcrypt) {
+        super(idForEncode, encoders);
+        this.bcrypt = bcrypt;
+        setDefaultPasswordEncoderForMatches(bcrypt);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (super.upgradeEncoding(encodedPassword)) {
+            return true;
+        }
+        return encodedPassword.startsWith(BCRYPT_PREFIX)
+                && bcrypt.upgradeEncoding(encodedPassword.substring(BCRYPT_PREFIX.length()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo.configuration;
+
+import com.example.demo.model.persistence.User;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of a successful JWT verification: the identity carried by the signed claims.
+ */
+public final class VerifiedToken {
+    private final Long userId;
+
+    private final String username;
+
+    private final List<GrantedAuthority> authorities;
+
+    private final long expiresAt;
+
+    public VerifiedToken(Long userId, String username, List<String> authorities, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        List<GrantedAuthority> granted = new ArrayList<>(authorities.size());
+        for (String authority : authorities) {
+            granted.add(new SimpleGrantedAuthority(authority));
+        }
+        this.authorities = Collections.unmodifiableList(granted);
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Tokens issued before identity claims were introduced only carry a subject.
+     */
+    public boolean hasIdentityClaims() {
+        return userId != null && !authorities.isEmpty();
+    }
+
+    /**
+     * Builds a detached, password-less user from the claims, used as the request principal.
+     */
+    public User toUser() {
+        User user = new User();
+        user.setId(userId);
+        user.setUsername(username);
+        return user;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache of tokens whose signature has already been verified.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the raw token so that bearer credentials are not retained, and an
+ * entry is never returned at or after the token's {@code exp}. Expired entries are dropped on read and by a
+ * periodic sweep; when the cache is full a tenth of it is evicted in arbitrary order, so that filling it costs one
+ * bounded eviction per {@code max-size / 10} insertions rather than a scan per insertion.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final Map<ByteBuffer, VerifiedToken> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Maximum number of cached tokens; {@code 0} disables the cache.
+     */
+    @Value("${jwt.token-cache.max-size:10000}")
+    private int maxSize;
+
+    public VerifiedToken get(String token) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        ByteBuffer key = digest(token);
+        VerifiedToken verifiedToken = entries.get(key);
+        if (verifiedToken == null) {
+            misses.increment();
+            return null;
+        }
+        if (verifiedToken.getExpiresAt() <= System.currentTimeMillis()) {
+            if (entries.remove(key, verifiedToken)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return verifiedToken;
+    }
+
+    public void put(String token, VerifiedToken verifiedToken) {
+        if (maxSize <= 0 || verifiedToken.getExpiresAt() <= System.currentTimeMillis()) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            makeRoom();
+        }
+        entries.put(digest(token), verifiedToken);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.token-cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<VerifiedToken> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getExpiresAt() <= now) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jwt.token.cache.hits", this, VerifiedTokenCache::getHitCount)
+                .description("Bearer tokens served from the verified-token cache")
+                .register(registry);
+        FunctionCounter.builder("jwt.token.cache.misses", this, VerifiedTokenCache::getMissCount)
+                .description("Bearer tokens that required signature verification")
+                .register(registry);
+        FunctionCounter.builder("jwt.token.cache.evictions", this, VerifiedTokenCache::getEvictionCount)
+                .description("Verified tokens dropped on expiry or to respect the size bound")
+                .register(registry);
+        Gauge.builder("jwt.token.cache.size", this, VerifiedTokenCache::size)
+                .register(registry);
+    }
+
+    private void makeRoom() {
+        int excess = entries.size() - maxSize + Math.max(1, maxSize / 10);
+        Iterator<ByteBuffer> iterator = entries.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static ByteBuffer digest(String token) {
+        return ByteBuffer.wrap(SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
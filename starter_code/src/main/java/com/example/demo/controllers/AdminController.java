@@ -0,0 +1,85 @@
+package com.example.demo.controllers;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.example.demo.model.responses.ItemSalesResponse;
+import com.example.demo.services.OrderExportService;
+import com.example.demo.services.SalesAnalyticsService;
+
+/**
+ * Endpoints for back-office jobs, restricted to users with the {@code ADMIN} authority.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+	public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+	Logger logger = LogManager.getLogger(AdminController.class);
+
+	@Autowired
+	private OrderExportService orderExportService;
+
+	@Autowired
+	private SalesAnalyticsService salesAnalyticsService;
+
+	/**
+	 * Streams all orders, oldest first, as newline-delimited JSON, optionally limited to an order id range
+	 * ({@code fromId} inclusive, {@code toId} exclusive) and a creation time range ({@code from} inclusive,
+	 * {@code to} exclusive, ISO-8601 instants). With {@code gzip=true} the stream is gzip-compressed and sent with
+	 * {@code Content-Encoding: gzip}.
+	 */
+	@GetMapping("/orders/export")
+	public ResponseEntity<StreamingResponseBody> exportOrders(
+			@RequestParam(value = "fromId", required = false) Long fromId,
+			@RequestParam(value = "toId", required = false) Long toId,
+			@RequestParam(value = "from", required = false) Instant from,
+			@RequestParam(value = "to", required = false) Instant to,
+			@RequestParam(value = "gzip", defaultValue = "false") boolean gzip) {
+		Long createdFrom = from == null ? null : from.toEpochMilli();
+		Long createdTo = to == null ? null : to.toEpochMilli();
+		logger.info("Order export started: fromId=" + fromId + ", toId=" + toId + ", from=" + from + ", to=" + to);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(APPLICATION_NDJSON);
+		if(gzip) {
+			response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		return response.body(out -> orderExportService.export(fromId, toId, createdFrom, createdTo, gzip, out));
+	}
+
+	/**
+	 * Returns the best-selling items of the last {@code minutes}, or of all time without it, ranked by
+	 * {@code revenue} or {@code units}.
+	 */
+	@GetMapping("/analytics/top-items")
+	public ResponseEntity<List<ItemSalesResponse>> getTopItems(
+			@RequestParam(value = "limit", defaultValue = "10") int limit,
+			@RequestParam(value = "minutes", required = false) Integer minutes,
+			@RequestParam(value = "by", defaultValue = "revenue") String by) {
+		SalesAnalyticsService.Metric metric;
+		if("revenue".equalsIgnoreCase(by)) {
+			metric = SalesAnalyticsService.Metric.REVENUE;
+		} else if("units".equalsIgnoreCase(by)) {
+			metric = SalesAnalyticsService.Metric.UNITS;
+		} else {
+			return ResponseEntity.badRequest().build();
+		}
+		try {
+			return ResponseEntity.ok(salesAnalyticsService.topItems(limit, minutes, metric));
+		} catch (IllegalArgumentException ex) {
+			logger.info("Top items rejected: " + ex.getMessage());
+			return ResponseEntity.badRequest().build();
+		}
+	}
+}
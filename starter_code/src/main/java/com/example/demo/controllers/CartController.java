@@ -1,67 +1,132 @@
 package com.example.demo.controllers;
 
 import java.util.Optional;
-import java.util.stream.IntStream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.ItemRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BatchCartRequest;
+import com.example.demo.model.requests.CartOperation;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.services.CartService;
+import com.example.demo.services.IdempotencyService;
+import com.example.demo.services.ItemCatalogue;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSnapshot;
 
 @RestController
 @RequestMapping("/api/cart")
 public class CartController {
 	@Autowired
-	private UserRepository userRepository;
+	private UserCache userCache;
 	
 	@Autowired
-	private CartRepository cartRepository;
-	
+	private ItemCatalogue itemCatalogue;
+
+	@Autowired
+	private CartService cartService;
+
 	@Autowired
-	private ItemRepository itemRepository;
+	private IdempotencyService idempotencyService;
+
+	@Value("${cart.batch.max-operations:100}")
+	private int maxBatchOperations;
 	
+	/**
+	 * Adds the item to the user's cart. A request carrying an {@code Idempotency-Key} header is applied at most
+	 * once; retries with the same key get the first response back. Answers 400 when the line quantity or the cart
+	 * total would overflow.
+	 */
 	@PostMapping("/addToCart")
-	public ResponseEntity<Cart> addTocart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
+	public ResponseEntity<CartResponse> addTocart(@RequestBody ModifyCartRequest request,
+			@RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyService.execute(idempotencyKey, "cart/addToCart:" + request.getUsername(), request,
+				CartResponse.class, () -> addTocart(request));
+	}
+
+	private ResponseEntity<CartResponse> addTocart(ModifyCartRequest request) {
+		UserSnapshot user = userCache.findByUsername(request.getUsername());
+		if(user == null || user.getCartId() == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Optional<Item> item = itemRepository.findById(request.getItemId());
+		Optional<Item> item = itemCatalogue.findById(request.getItemId());
 		if(!item.isPresent()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.addItem(item.get()));
-		cartRepository.save(cart);
-		return ResponseEntity.ok(cart);
+		Optional<CartResponse> cart;
+		try {
+			cart = cartService.modify(user.getCartId(), c -> {
+				c.addItem(item.get(), request.getQuantity());
+				return CartResponse.of(c);
+			});
+		} catch (ArithmeticException ex) {
+			// the quantity or total would overflow; the cart is left unchanged
+			return ResponseEntity.badRequest().build();
+		}
+		if(!cart.isPresent()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		return ResponseEntity.ok(cart.get());
 	}
 	
 	@PostMapping("/removeFromCart")
-	public ResponseEntity<Cart> removeFromcart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
+	public ResponseEntity<CartResponse> removeFromcart(@RequestBody ModifyCartRequest request) {
+		UserSnapshot user = userCache.findByUsername(request.getUsername());
+		if(user == null || user.getCartId() == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Optional<Item> item = itemRepository.findById(request.getItemId());
+		Optional<Item> item = itemCatalogue.findById(request.getItemId());
 		if(!item.isPresent()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.removeItem(item.get()));
-		cartRepository.save(cart);
-		return ResponseEntity.ok(cart);
+		Optional<CartResponse> cart = cartService.modify(user.getCartId(), c -> {
+			c.removeItem(item.get(), request.getQuantity());
+			return CartResponse.of(c);
+		});
+		if(!cart.isPresent()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		return ResponseEntity.ok(cart.get());
+	}
+
+	/**
+	 * Applies a list of add/remove/set-quantity operations for one user in a single transaction. The whole batch
+	 * is rejected with 404 if any item does not exist, and with 400 if any operation would overflow a line
+	 * quantity or the cart total.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<CartResponse> batch(@RequestBody BatchCartRequest request) {
+		if(request.getOperations() == null || request.getOperations().isEmpty()
+				|| request.getOperations().size() > maxBatchOperations) {
+			return ResponseEntity.badRequest().build();
+		}
+		for (CartOperation operation : request.getOperations()) {
+			if(operation.getType() == null || operation.getQuantity() < 0) {
+				return ResponseEntity.badRequest().build();
+			}
+		}
+		UserSnapshot user = userCache.findByUsername(request.getUsername());
+		if(user == null || user.getCartId() == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Optional<CartResponse> cart;
+		try {
+			cart = cartService.applyBatch(user.getCartId(), request.getOperations(), CartResponse::of);
+		} catch (ArithmeticException ex) {
+			return ResponseEntity.badRequest().build();
+		}
+		if(!cart.isPresent()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		return ResponseEntity.ok(cart.get());
 	}
 }
@@ -3,31 +3,133 @@ package com.example.demo.controllers;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.requests.CreateItemRequest;
+import com.example.demo.services.CatalogueService;
+import com.example.demo.services.ItemCatalogue;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/item")
 public class ItemController {
 	@Autowired
 	private ItemRepository itemRepository;
+
+	@Autowired
+	private CatalogueService catalogueService;
+
+	@Autowired
+	private ItemCatalogue itemCatalogue;
 	
+	/**
+	 * Returns one page of the catalogue sorted by {@code id}, {@code name} or {@code price}. Pages are addressed
+	 * by number with {@code page}, or otherwise by the {@code after} cursor; in both cases a {@code Link} header
+	 * with {@code rel="next"} points at the next page when there is one.
+	 * <p>
+	 * The {@code ETag} is the catalogue version, which only changes when an item is created or modified, so a
+	 * request whose {@code If-None-Match} matches it is answered with 304 without reading the catalogue. The version
+	 * is read before the page, so a page is never tagged with a newer version than its contents.
+	 */
 	@GetMapping
-	public ResponseEntity<List<Item>> getItems() {
-		return ResponseEntity.ok(itemRepository.findAll());
+	public ResponseEntity<List<Item>> getItems(@RequestParam(value = "page", required = false) Integer page,
+			@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "sort", defaultValue = "id") String sort,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		CatalogueService.Sort order;
+		try {
+			order = CatalogueService.Sort.valueOf(sort.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException ex) {
+			return ResponseEntity.badRequest().build();
+		}
+		if(page != null && (page < 0 || after != null)) {
+			return ResponseEntity.badRequest().build();
+		}
+		String etag = "\"" + catalogueService.getVersion() + "\"";
+		if(matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+		}
+		CatalogueService.Page items;
+		try {
+			items = page != null ? catalogueService.findPage(order, page, size)
+					: catalogueService.findPageAfter(order, after, size);
+		} catch (IllegalArgumentException ex) {
+			return ResponseEntity.badRequest().build();
+		}
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache());
+		if(items.getNextPage() != null || items.getNextCursor() != null) {
+			UriComponentsBuilder next = UriComponentsBuilder.fromPath("/api/item")
+					.queryParam("sort", order.name().toLowerCase(Locale.ROOT))
+					.queryParam("size", items.getPageSize());
+			if(items.getNextPage() != null) {
+				next.queryParam("page", items.getNextPage());
+			} else {
+				next.queryParam("after", items.getNextCursor());
+			}
+			response.header(HttpHeaders.LINK, "<" + next.build().encode().toUriString() + ">; rel=\"next\"");
+		}
+		return response.body(items.getItems());
+	}
+
+	/**
+	 * Whether an {@code If-None-Match} header, a list of possibly weak tags or {@code *}, matches {@code etag}.
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null) {
+			return false;
+		}
+		for(String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if(tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if(tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns one page of the items whose name or description holds every word of {@code q}, or a word starting
+	 * with it, best match first. A {@code Link} header with {@code rel="next"} points at the next page when there
+	 * is one.
+	 */
+	@GetMapping("/search")
+	public ResponseEntity<List<Item>> searchItems(@RequestParam("q") String query,
+			@RequestParam(value = "page", defaultValue = "0") int page,
+			@RequestParam(value = "size", required = false) Integer size) {
+		if(page < 0) {
+			return ResponseEntity.badRequest().build();
+		}
+		CatalogueService.Page items = catalogueService.search(query, page, size);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if(items.getNextPage() != null) {
+			String next = UriComponentsBuilder.fromPath("/api/item/search")
+					.queryParam("q", "{q}")
+					.queryParam("size", items.getPageSize())
+					.queryParam("page", items.getNextPage())
+					.encode().buildAndExpand(query).toUriString();
+			response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+		}
+		return response.body(items.getItems());
 	}
 	
 	@GetMapping("/{id}")
 	public ResponseEntity<Item> getItemById(@PathVariable Long id) {
-		return ResponseEntity.of(itemRepository.findById(id));
+		return ResponseEntity.of(itemCatalogue.findById(id));
 	}
 	
 	@GetMapping("/name/{name}")
 	public ResponseEntity<List<Item>> getItemsByName(@PathVariable String name) {
-		List<Item> items = itemRepository.findByName(name);
+		List<Item> items = itemCatalogue.findByName(name);
 		return items == null || items.isEmpty() ? ResponseEntity.notFound().build()
 				: ResponseEntity.ok(items);
 			
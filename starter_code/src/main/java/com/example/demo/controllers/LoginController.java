@@ -2,34 +2,105 @@ package com.example.demo.controllers;
 
 import com.example.demo.configuration.JwtTokenProvider;
 import com.example.demo.model.requests.LoginRequest;
+import com.example.demo.model.requests.RefreshTokenRequest;
 import com.example.demo.services.CustomUserDetails;
+import com.example.demo.services.CustomUserService;
+import com.example.demo.services.IssuedRefreshToken;
+import com.example.demo.services.LoginRateLimiter;
+import com.example.demo.services.PasswordHashingService;
+import com.example.demo.services.RefreshTokenService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
 @RestController
 public class LoginController {
+    public static final String REFRESH_TOKEN_HEADER = "X-Refresh-Token";
+
     @Autowired
-    private AuthenticationManager authenticationManager;
+    private PasswordHashingService passwordHashingService;
 
     @Autowired
     private JwtTokenProvider tokenProvider;
 
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private CustomUserService customUserService;
+
+    /**
+     * Issues the tokens once the password is verified, so the refresh token insert does not hold a hashing worker.
+     */
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private Executor taskExecutor;
+
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
-        Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-        String jwt = tokenProvider.generateToken((CustomUserDetails) authentication.getPrincipal());
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginRequest loginRequest, HttpServletRequest request) {
+        loginRateLimiter.acquire(loginRequest.getUsername(), request.getRemoteAddr());
+        return passwordHashingService.authenticate(new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()))
+                .handleAsync((authentication, ex) -> {
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                        if (cause instanceof AuthenticationException) {
+                            return ResponseEntity.status(401).body("Login failed");
+                        }
+                        throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                    }
+                    return loginResponse(authentication);
+                }, taskExecutor);
+    }
+
+    /**
+     * Exchanges a refresh token for a new access token and a rotated refresh token, without any password check.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshTokenRequest refreshRequest) {
+        IssuedRefreshToken refreshToken = refreshTokenService.rotate(refreshRequest.getRefreshToken());
+        if (refreshToken == null) {
+            return ResponseEntity.status(401).body("Refresh failed");
+        }
+        String jwt = tokenProvider.generateToken(customUserService.createUserDetails(refreshToken.toUser()));
+        return ResponseEntity.ok()
+                .header("Authorization", "Bearer " + jwt)
+                .header(REFRESH_TOKEN_HEADER, refreshToken.getToken())
+                .body("Refresh successful");
+    }
+
+    /**
+     * Revokes the refresh token and every token rotated from it. Issued access tokens stay valid until they expire.
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody RefreshTokenRequest refreshRequest) {
+        refreshTokenService.revoke(refreshRequest.getRefreshToken());
+        return ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<?> loginResponse(Authentication authentication) {
+        CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
+        String jwt = tokenProvider.generateToken(userDetails);
 
         if (!jwt.isEmpty()) {
+            IssuedRefreshToken refreshToken = refreshTokenService.issue(userDetails.getUser().getId(), userDetails.getUser().getUsername());
             return ResponseEntity.ok()
                     .header("Authorization", "Bearer " + jwt)
+                    .header(REFRESH_TOKEN_HEADER, refreshToken.getToken())
                     .body("Login successful");
         } else {
             return ResponseEntity.status(401).body("Login failed");
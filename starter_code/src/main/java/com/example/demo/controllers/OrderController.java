@@ -1,27 +1,37 @@
 package com.example.demo.controllers;
 
-import java.math.BigDecimal;
-import java.util.Iterator;
+import java.net.URI;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Optional;
 
-import com.example.demo.model.persistence.Item;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import com.example.demo.model.persistence.Cart;
-import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.UserOrder;
-import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.OrderRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.persistence.UserOrderSummary;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.model.responses.OrderStatusResponse;
+import com.example.demo.model.responses.OrderSummaryResponse;
+import com.example.demo.services.CartService;
+import com.example.demo.services.IdempotencyService;
+import com.example.demo.services.OrderHistoryService;
+import com.example.demo.services.OrderService;
+import com.example.demo.services.OrderSubmissionPipeline;
+import com.example.demo.services.OrderSummaryService;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSnapshot;
 
 @RestController
 @RequestMapping("/api/order")
@@ -29,43 +39,142 @@ public class OrderController {
 	Logger logger = LogManager.getLogger(OrderController.class);
 
 	@Autowired
-	private UserRepository userRepository;
+	private UserCache userCache;
 	
 	@Autowired
-	private OrderRepository orderRepository;
+	private OrderService orderService;
 
 	@Autowired
-	private CartRepository cartRepository;
+	private CartService cartService;
+
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Autowired
+	private OrderHistoryService orderHistoryService;
+
+	@Autowired
+	private OrderSubmissionPipeline orderSubmissionPipeline;
+
+	@Autowired
+	private OrderSummaryService orderSummaryService;
 	
+	/**
+	 * Orders the contents of the user's cart. A request carrying an {@code Idempotency-Key} header creates at
+	 * most one order; retries with the same key get the first response back.
+	 */
 	@PostMapping("/submit/{username}")
-	public ResponseEntity<UserOrder> submit(@PathVariable String username) {
+	public ResponseEntity<OrderResponse> submit(@PathVariable String username,
+			@RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyService.execute(idempotencyKey, "order/submit:" + username, null, OrderResponse.class,
+				() -> submit(username));
+	}
+
+	private ResponseEntity<OrderResponse> submit(String username) {
 		logger.info("Order creation - creation step started");
-		User user = userRepository.findByUsername(username);
-		if(user == null) {
+		UserSnapshot user = userCache.findByUsername(username);
+		if(user == null || user.getCartId() == null) {
 			return ResponseEntity.notFound().build();
 		}
-		UserOrder order = UserOrder.createFromCart(user.getCart());
-		orderRepository.save(order);
-
-		Cart cart = user.getCart();
-		List<Item> itemList = cart.getItems();
-		Iterator<Item> iterator = itemList.iterator();
-		while (iterator.hasNext()) {
-			Item item = iterator.next();
-			iterator.remove();
+		Optional<OrderResponse> order = cartService.checkout(user.getCartId(), orderService::placeOrder);
+		if(!order.isPresent()) {
+			return ResponseEntity.notFound().build();
 		}
-		cart.setTotal(BigDecimal.valueOf(0));
-		cartRepository.save(cart);
 		logger.info("Order creation - creation step ended");
-		return ResponseEntity.ok(order);
+		return ResponseEntity.ok(order.get());
 	}
 	
+	/**
+	 * Queues the order of the user's cart and answers at once with 202 and the id the order will be created with,
+	 * whose outcome is polled at {@code /api/order/status/{username}/{orderId}}. When the order pipeline is disabled
+	 * or its queue is full, the order is created synchronously instead and answered with 200 and a completed status.
+	 * <p>
+	 * The order is for the cart as it is when the request is accepted. If the cart is changed before the order is
+	 * created, the order fails and the cart is kept with the change, to be submitted again.
+	 */
+	@PostMapping("/submit-async/{username}")
+	public ResponseEntity<OrderStatusResponse> submitAsync(@PathVariable String username,
+			@RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		return idempotencyService.execute(idempotencyKey, "order/submit-async:" + username, null,
+				OrderStatusResponse.class, () -> submitAsync(username));
+	}
+
+	private ResponseEntity<OrderStatusResponse> submitAsync(String username) {
+		UserSnapshot user = userCache.findByUsername(username);
+		if(user == null || user.getCartId() == null) {
+			return ResponseEntity.notFound().build();
+		}
+		Optional<OrderStatusResponse> queued = orderSubmissionPipeline.enqueue(username, user.getCartId());
+		if(queued.isPresent()) {
+			URI status = UriComponentsBuilder.fromPath("/api/order/status/{username}/{orderId}")
+					.buildAndExpand(username, queued.get().getOrderId()).encode().toUri();
+			return ResponseEntity.accepted().location(status).body(queued.get());
+		}
+		ResponseEntity<OrderResponse> order = submit(username);
+		if(!order.getStatusCode().is2xxSuccessful()) {
+			return ResponseEntity.status(order.getStatusCode()).build();
+		}
+		return ResponseEntity.ok(orderSubmissionPipeline.completed(username, user.getCartId(), order.getBody()));
+	}
+
+	@GetMapping("/status/{username}/{orderId}")
+	public ResponseEntity<OrderStatusResponse> getStatus(@PathVariable String username, @PathVariable long orderId) {
+		OrderStatusResponse status = orderSubmissionPipeline.getStatus(username, orderId);
+		if(status == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(status);
+	}
+
+	/**
+	 * Returns the user's order count, lifetime spend and time of the last order from a single row, without
+	 * reading the orders.
+	 */
+	@GetMapping("/summary/{username}")
+	public ResponseEntity<OrderSummaryResponse> getSummary(@PathVariable String username) {
+		UserSnapshot user = userCache.findByUsername(username);
+		if(user == null) {
+			return ResponseEntity.notFound().build();
+		}
+		UserOrderSummary summary = orderSummaryService.findByUserId(user.getId());
+		return ResponseEntity.ok(OrderSummaryResponse.of(summary));
+	}
+
+	/**
+	 * Returns one page of the user's orders, oldest first. When more orders follow, a {@code Link} header with
+	 * {@code rel="next"} points at the next page; its {@code after} parameter is the id of the last order returned.
+	 */
 	@GetMapping("/history/{username}")
-	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+	public ResponseEntity<List<OrderResponse>> getOrdersForUser(@PathVariable String username,
+			@RequestParam(value = "after", defaultValue = "0") long after,
+			@RequestParam(value = "limit", required = false) Integer limit) {
+		UserSnapshot user = userCache.findByUsername(username);
+		if(user == null) {
+			return ResponseEntity.notFound().build();
+		}
+		OrderHistoryService.Page page = orderHistoryService.findPage(user.getId(), after, limit);
+		if(page.getNextAfterId() == null) {
+			return ResponseEntity.ok(page.getOrders());
+		}
+		String next = UriComponentsBuilder.fromPath("/api/order/history/{username}")
+				.queryParam("after", page.getNextAfterId())
+				.queryParam("limit", page.getPageSize())
+				.buildAndExpand(username).encode().toUriString();
+		return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(page.getOrders());
+	}
+
+	/**
+	 * Returns the user's whole order history as one JSON array, written while it is read page by page instead of
+	 * being built in memory first.
+	 */
+	@GetMapping(value = "/history/{username}", params = "stream=true")
+	public ResponseEntity<StreamingResponseBody> streamOrdersForUser(@PathVariable String username) {
+		UserSnapshot user = userCache.findByUsername(username);
 		if(user == null) {
 			return ResponseEntity.notFound().build();
 		}
-		return ResponseEntity.ok(orderRepository.findByUser(user));
+		long userId = user.getId();
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8)
+				.body(out -> orderHistoryService.writeAll(userId, out));
 	}
 }
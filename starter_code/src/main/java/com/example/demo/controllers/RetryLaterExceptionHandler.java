@@ -0,0 +1,22 @@
+package com.example.demo.controllers;
+
+import com.example.demo.services.RetryLaterException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class RetryLaterExceptionHandler {
+	Logger logger = LogManager.getLogger(RetryLaterExceptionHandler.class);
+
+	@ExceptionHandler(RetryLaterException.class)
+	public ResponseEntity<String> handleRetryLater(RetryLaterException ex) {
+		logger.info("Request rejected - " + ex.getMessage());
+		return ResponseEntity.status(ex.getStatus())
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+				.body(ex.getMessage());
+	}
+}
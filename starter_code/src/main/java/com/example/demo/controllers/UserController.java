@@ -2,17 +2,24 @@ package com.example.demo.controllers;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.responses.UserResponse;
+import com.example.demo.services.PasswordHashingService;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSnapshot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @RestController
 @RequestMapping("/api/user")
 public class UserController {
@@ -22,55 +29,66 @@ public class UserController {
 	private UserRepository userRepository;
 	
 	@Autowired
-	private CartRepository cartRepository;
+	private PasswordHashingService passwordHashingService;
+
+	@Autowired
+	private UserCache userCache;
 
+	/**
+	 * Runs the database work that follows hashing, so the bounded hashing pool only ever does BCrypt.
+	 */
 	@Autowired
-	private PasswordEncoder passwordEncoder;
+	@Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+	private Executor taskExecutor;
 
 	@GetMapping("/id/{id}")
-	public ResponseEntity<User> findById(@PathVariable Long id) {
-		return ResponseEntity.of(userRepository.findById(id));
+	public ResponseEntity<UserResponse> findById(@PathVariable Long id) {
+		return ResponseEntity.of(userRepository.findResponseById(id));
 	}
 	
 	@GetMapping("/{username}")
-	public ResponseEntity<User> findByUserName(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
-		return user == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(user);
+	public ResponseEntity<UserResponse> findByUserName(@PathVariable String username) {
+		UserSnapshot user = userCache.findByUsername(username);
+		return user == null ? ResponseEntity.notFound().build()
+				: ResponseEntity.ok(new UserResponse(user.getId(), user.getUsername(), user.getCartId()));
 	}
 	
 	@PostMapping("/create")
-	public ResponseEntity<?> createUser(@RequestBody CreateUserRequest createUserRequest) {
+	public CompletableFuture<ResponseEntity<?>> createUser(@RequestBody CreateUserRequest createUserRequest) {
 		logger.info("User creation - verifying step started");
 		if (createUserRequest.getPassword().length() < 8) {
 			logger.info("User creation - verifying step - Password must be at least 8 characters long");
 			logger.info("User creation - verifying step ended");
-			return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body("Password must be at least 8 characters long");
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body("Password must be at least 8 characters long"));
 		}
 
 		if (!createUserRequest.getPassword().equals(createUserRequest.getPasswordConfirmation())) {
 			logger.info("User creation - verifying step - Password and password confirmation mismatch");
 			logger.info("User creation - verifying step ended");
-			return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body("Password and password confirmation mismatch");
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body("Password and password confirmation mismatch"));
 		}
 
-		User exsitedUser = userRepository.findByUsername(createUserRequest.getUsername());
+		UserSnapshot exsitedUser = userCache.findByUsername(createUserRequest.getUsername());
 		if (exsitedUser != null) {
 			logger.info("User creation - verifying step - Username is already existed");
 			logger.info("User creation - verifying step ended");
-			return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body("Username is already existed");
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body("Username is already existed"));
 		}
 		logger.info("User creation - verifying step ended");
 
 		logger.info("User creation - creation step started");
-		User user = new User();
-		user.setUsername(createUserRequest.getUsername());
-		user.setPassword(passwordEncoder.encode(createUserRequest.getPassword()));
-		Cart cart = new Cart();
-		cartRepository.save(cart);
-		user.setCart(cart);
-		userRepository.save(user);
-		logger.info("User creation - creation step successfully");
-		logger.info("User creation - creation step ended");
-		return ResponseEntity.ok(user);
+		return passwordHashingService.encode(createUserRequest.getPassword()).thenApplyAsync(encodedPassword -> {
+			User user = new User();
+			user.setUsername(createUserRequest.getUsername());
+			user.setPassword(encodedPassword);
+			// runs outside the request's persistence context, so the new cart is persisted through the user
+			// cascade rather than saved (and detached) on its own
+			user.setCart(new Cart());
+			userRepository.save(user);
+			userCache.invalidate(user.getUsername());
+			logger.info("User creation - creation step successfully");
+			logger.info("User creation - creation step ended");
+			return ResponseEntity.ok(new UserResponse(user.getId(), user.getUsername(), user.getCart().getId()));
+		}, taskExecutor);
 	}
 }
@@ -0,0 +1,43 @@
+package com.example.demo.migrations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Folds the legacy {@code cart_items} join table, which held one row per unit, into {@code cart_line} rows with a
+ * quantity, then drops it. Runs after Hibernate has created {@code cart_line} and its id sequence, and is a no-op
+ * once the legacy table is gone.
+ */
+@Component
+@Order(2)
+public class CartItemsMigration implements StartupMigration {
+    Logger logger = LogManager.getLogger(CartItemsMigration.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void migrate() {
+        Integer legacyTables = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = 'CART_ITEMS'",
+                Integer.class);
+        if (legacyTables == null || legacyTables == 0) {
+            return;
+        }
+        int migrated = jdbcTemplate.update(
+                "INSERT INTO cart_line (id, cart_id, item_id, quantity, unit_price_minor) "
+                        + "SELECT NEXT VALUE FOR cart_line_seq, g.* FROM ("
+                        + "SELECT ci.cart_id, ci.items_id, COUNT(*), i.price_minor FROM cart_items ci "
+                        + "JOIN item i ON i.id = ci.items_id "
+                        + "WHERE NOT EXISTS (SELECT 1 FROM cart_line cl WHERE cl.cart_id = ci.cart_id AND cl.item_id = ci.items_id) "
+                        + "GROUP BY ci.cart_id, ci.items_id, i.price_minor) g");
+        jdbcTemplate.execute("DROP TABLE cart_items");
+        logger.info("Migrated " + migrated + " cart lines from cart_items");
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo.migrations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Creates the single-row {@code catalogue_version} table read and incremented by
+ * {@link com.example.demo.services.CatalogueService}. The row starts at the time it is created rather than at 0, so
+ * that tags handed out before the database was recreated are not reused. A no-op once the row exists.
+ */
+@Component
+@Order(8)
+public class CatalogueVersionMigration implements StartupMigration {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void migrate() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS catalogue_version (id INT PRIMARY KEY, version BIGINT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO catalogue_version (id, version) SELECT 1, ? FROM DUAL "
+                + "WHERE NOT EXISTS (SELECT 1 FROM catalogue_version WHERE id = 1)", System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.demo.migrations;
+
+import com.example.demo.services.ItemCatalogue;
+import com.example.demo.services.ItemSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the item catalogue snapshot and search index on every start, after the item prices have been migrated.
+ */
+@Component
+@Order(7)
+public class ItemCatalogueLoad implements StartupMigration {
+    @Autowired
+    private ItemCatalogue itemCatalogue;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
+    @Override
+    public void migrate() {
+        itemCatalogue.load();
+        itemSearchIndex.load();
+    }
+}
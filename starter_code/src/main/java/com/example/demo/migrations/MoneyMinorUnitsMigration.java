@@ -0,0 +1,55 @@
+package com.example.demo.migrations;
+
+import com.example.demo.model.persistence.Money;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Copies the legacy {@code DECIMAL} money columns into the {@code BIGINT} minor-unit columns Hibernate has added
+ * next to them, then drops the decimal columns. Each column is handled independently and is a no-op once its
+ * decimal column is gone.
+ */
+@Component
+@Order(1)
+public class MoneyMinorUnitsMigration implements StartupMigration {
+    Logger logger = LogManager.getLogger(MoneyMinorUnitsMigration.class);
+
+    private static final String[][] COLUMNS = {
+            {"ITEM", "PRICE", "PRICE_MINOR"},
+            {"CART", "TOTAL", "TOTAL_MINOR"},
+            {"USER_ORDER", "TOTAL", "TOTAL_MINOR"},
+            {"CART_LINE", "UNIT_PRICE", "UNIT_PRICE_MINOR"}};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void migrate() {
+        long factor = (long) Math.pow(10, Money.SCALE);
+        for (String[] column : COLUMNS) {
+            String table = column[0];
+            String decimalColumn = column[1];
+            String minorColumn = column[2];
+            if (!columnExists(table, decimalColumn) || !columnExists(table, minorColumn)) {
+                continue;
+            }
+            int migrated = jdbcTemplate.update("UPDATE \"" + table + "\" SET " + minorColumn
+                    + " = CAST(ROUND(" + decimalColumn + " * " + factor + ", 0) AS BIGINT) WHERE " + decimalColumn + " IS NOT NULL");
+            jdbcTemplate.execute("ALTER TABLE \"" + table + "\" DROP COLUMN " + decimalColumn);
+            logger.info("Migrated " + migrated + " rows of " + table + "." + decimalColumn + " to minor units");
+        }
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = ? AND COLUMN_NAME = ?",
+                Integer.class, table, column);
+        return count != null && count > 0;
+    }
+}
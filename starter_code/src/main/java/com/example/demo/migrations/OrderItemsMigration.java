@@ -0,0 +1,45 @@
+package com.example.demo.migrations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Folds the legacy {@code user_order_items} join table, which held one row per unit pointing at the live
+ * {@code item}, into {@code order_line} snapshots, then drops it. The price those orders were placed at was never
+ * stored, so their lines take the item's current name and price, which is what their history showed until now.
+ * Runs after Hibernate has created {@code order_line} and its id sequence, and is a no-op once the legacy table is
+ * gone.
+ */
+@Component
+@Order(5)
+public class OrderItemsMigration implements StartupMigration {
+    Logger logger = LogManager.getLogger(OrderItemsMigration.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void migrate() {
+        Integer legacyTables = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = 'USER_ORDER_ITEMS'",
+                Integer.class);
+        if (legacyTables == null || legacyTables == 0) {
+            return;
+        }
+        int migrated = jdbcTemplate.update(
+                "INSERT INTO order_line (id, order_id, item_id, name, unit_price_minor, quantity) "
+                        + "SELECT NEXT VALUE FOR order_line_seq, g.* FROM ("
+                        + "SELECT oi.user_order_id, oi.items_id, i.name, i.price_minor, COUNT(*) FROM user_order_items oi "
+                        + "JOIN item i ON i.id = oi.items_id "
+                        + "WHERE NOT EXISTS (SELECT 1 FROM order_line ol WHERE ol.order_id = oi.user_order_id AND ol.item_id = oi.items_id) "
+                        + "GROUP BY oi.user_order_id, oi.items_id, i.name, i.price_minor) g");
+        jdbcTemplate.execute("DROP TABLE user_order_items");
+        logger.info("Migrated " + migrated + " order lines from user_order_items");
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.migrations;
+
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserOrderSummaryRepository;
+import com.example.demo.services.OrderSummaryService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the {@code user_order_summary} table from the existing orders the first time the application starts with
+ * it, that is when there are orders but no summaries yet. {@code order.summary.rebuild-on-startup} forces a full
+ * rebuild on every start instead, to repair summaries that have drifted.
+ */
+@Component
+@Order(4)
+public class OrderSummaryBackfill implements StartupMigration {
+    Logger logger = LogManager.getLogger(OrderSummaryBackfill.class);
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private UserOrderSummaryRepository userOrderSummaryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Value("${order.summary.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    @Override
+    public void migrate() {
+        if (!rebuildOnStartup && (userOrderSummaryRepository.count() > 0 || orderRepository.count() == 0)) {
+            return;
+        }
+        logger.info("Rebuilding the order summaries from the existing orders");
+        orderSummaryService.rebuild();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demo.migrations;
+
+import com.example.demo.services.SalesAnalyticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the in-memory sales analytics from the orders on every start, after the order migrations have run.
+ * {@code analytics.sales.rebuild-on-startup=false} skips it, leaving the analytics to count only new orders.
+ */
+@Component
+@Order(6)
+public class SalesAnalyticsRebuild implements StartupMigration {
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @Value("${analytics.sales.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    @Override
+    public void migrate() {
+        if (rebuildOnStartup) {
+            salesAnalyticsService.rebuild();
+        }
+    }
+}
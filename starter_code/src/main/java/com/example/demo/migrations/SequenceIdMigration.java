@@ -0,0 +1,72 @@
+package com.example.demo.migrations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Moves the id sequences Hibernate creates for the pooled generators past the ids already handed out by the
+ * former identity columns. A sequence that is already ahead of its table is left alone, so this is a no-op after
+ * the first run.
+ */
+@Component
+@Order(3)
+public class SequenceIdMigration implements StartupMigration {
+    Logger logger = LogManager.getLogger(SequenceIdMigration.class);
+
+    /**
+     * Must match the {@code allocationSize} of the entities' sequence generators.
+     */
+    private static final long ALLOCATION_SIZE = 50;
+
+    private static final String[][] SEQUENCES = {
+            {"USER", "USER_SEQ"},
+            {"CART", "CART_SEQ"},
+            {"CART_LINE", "CART_LINE_SEQ"},
+            {"ITEM", "ITEM_SEQ"},
+            {"USER_ORDER", "USER_ORDER_SEQ"},
+            {"REFRESH_TOKEN", "REFRESH_TOKEN_SEQ"},
+            {"IDEMPOTENCY_RECORD", "IDEMPOTENCY_RECORD_SEQ"}};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void migrate() {
+        for (String[] sequence : SEQUENCES) {
+            String table = sequence[0];
+            String sequenceName = sequence[1];
+            Long currentValue = currentValue(sequenceName);
+            if (currentValue == null || !tableExists(table)) {
+                continue;
+            }
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(ID) FROM \"" + table + "\"", Long.class);
+            if (maxId == null || maxId <= currentValue) {
+                continue;
+            }
+            // the pooled optimizer hands out the block ending at the value it reads, so the whole block must lie
+            // above the existing ids
+            long restartWith = maxId + ALLOCATION_SIZE;
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequenceName + " RESTART WITH " + restartWith);
+            logger.info("Restarted " + sequenceName + " at " + restartWith + " past the existing ids of " + table);
+        }
+    }
+
+    private Long currentValue(String sequenceName) {
+        return jdbcTemplate.query(
+                "SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_SCHEMA = SCHEMA() AND SEQUENCE_NAME = ?",
+                rs -> rs.next() ? rs.getLong(1) : null, sequenceName);
+    }
+
+    private boolean tableExists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = ?",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.demo.migrations;
+
+/**
+ * A schema or data migration, or the load of an in-memory view of the data, run once at startup by
+ * {@link StartupMigrations} in {@link org.springframework.core.annotation.Order} order.
+ */
+public interface StartupMigration {
+    void migrate();
+}
@@ -0,0 +1,37 @@
+package com.example.demo.migrations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+
+/**
+ * Runs every {@link StartupMigration} once all beans have been created, and so after Hibernate has updated the
+ * schema, but while the context is still refreshing: before the embedded web server binds its port and before
+ * scheduled tasks start, so that no request is ever served against a schema, data or cache that has not been
+ * migrated or loaded yet. A failing migration fails the startup.
+ */
+@Component
+public class StartupMigrations implements SmartInitializingSingleton {
+    Logger logger = LogManager.getLogger(StartupMigrations.class);
+
+    /**
+     * Sorted by {@link org.springframework.core.annotation.Order} on injection.
+     */
+    @Autowired
+    private List<StartupMigration> migrations;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (StartupMigration migration : migrations) {
+            long start = System.currentTimeMillis();
+            migration.migrate();
+            logger.debug("Ran " + ClassUtils.getUserClass(migration).getSimpleName() + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+}
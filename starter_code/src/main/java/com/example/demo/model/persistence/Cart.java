@@ -1,51 +1,75 @@
 package com.example.demo.model.persistence;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.ManyToMany;
+import javax.persistence.MapKey;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
 @Table(name = "cart")
 public class Cart {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_seq")
+	@SequenceGenerator(name = "cart_seq", sequenceName = "cart_seq", allocationSize = 50)
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany
-	@JsonProperty
-	@Column
-    private List<Item> items;
+	/**
+	 * Line items keyed by item id, so adding or removing any quantity of an item touches a single row.
+	 */
+	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
+	@MapKey(name = "itemId")
+	@JsonIgnore
+	private Map<Long, CartLine> lines = new LinkedHashMap<>();
 	
 	@OneToOne(mappedBy = "cart")
 	@JsonProperty
     private User user;
 	
-	@Column
-	@JsonProperty
-	private BigDecimal total;
+	@Column(name = "total_minor", nullable = false, columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private long totalMinor;
+
+	/**
+	 * Optimistic lock version; existing rows start at 0 through the column default.
+	 */
+	@Version
+	@Column(columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private Long version;
 	
+	@JsonProperty("total")
 	public BigDecimal getTotal() {
-		return total;
+		return Money.toDecimal(totalMinor);
 	}
 
 	public void setTotal(BigDecimal total) {
-		this.total = total;
+		this.totalMinor = Money.toMinorUnits(total);
+	}
+
+	public long getTotalMinor() {
+		return totalMinor;
+	}
+
+	public void setTotalMinor(long totalMinor) {
+		this.totalMinor = totalMinor;
 	}
 
 	public User getUser() {
@@ -64,33 +88,135 @@ public class Cart {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
-		return items;
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	@JsonProperty("lines")
+	public Collection<CartLine> getLines() {
+		return lines.values();
 	}
 
-	public void setItems(List<Item> items) {
-		this.items = items;
+	public CartLine getLine(Long itemId) {
+		return lines.get(itemId);
 	}
 	
 	public void addItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		addItem(item, 1);
+	}
+
+	/**
+	 * Adds {@code quantity} units of the item, repricing an existing line when the item price has changed. The new
+	 * quantity and total are computed before either is assigned, so an overflow leaves the cart unchanged.
+	 */
+	public void addItem(Item item, int quantity) {
+		if (quantity <= 0) {
+			return;
 		}
-		items.add(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		CartLine line = lines.get(item.getId());
+		int newQuantity = Math.addExact(line == null ? 0 : line.getQuantity(), quantity);
+		long newTotalMinor = Math.addExact(line == null ? totalMinor : totalMinor - line.getLineTotalMinor(),
+				Money.times(item.getPriceMinor(), newQuantity));
+		if (line == null) {
+			line = new CartLine(this, item);
+			lines.put(item.getId(), line);
+		} else if (line.getUnitPriceMinor() != item.getPriceMinor()) {
+			line.setUnitPriceMinor(item.getPriceMinor());
 		}
-		total = total.add(item.getPrice());
+		line.setQuantity(newQuantity);
+		totalMinor = newTotalMinor;
 	}
 	
 	public void removeItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		removeItem(item, 1);
+	}
+
+	/**
+	 * Removes up to {@code quantity} units of the item, dropping its line once none are left.
+	 */
+	public void removeItem(Item item, int quantity) {
+		CartLine line = lines.get(item.getId());
+		if (line == null || quantity <= 0) {
+			return;
+		}
+		int removed = Math.min(quantity, line.getQuantity());
+		totalMinor -= Money.times(line.getUnitPriceMinor(), removed);
+		if (removed == line.getQuantity()) {
+			lines.remove(item.getId());
+		} else {
+			line.setQuantity(line.getQuantity() - removed);
+		}
+		if (totalMinor < 0) {
+			totalMinor = 0;
+		}
+	}
+
+	/**
+	 * Sets the quantity of the item to exactly {@code quantity}; zero or less removes its line.
+	 */
+	public void setItemQuantity(Item item, int quantity) {
+		CartLine line = lines.get(item.getId());
+		int current = line == null ? 0 : line.getQuantity();
+		if (quantity > current) {
+			addItem(item, quantity - current);
+		} else if (current > 0) {
+			removeItem(item, current - Math.max(quantity, 0));
+		}
+	}
+
+	public void clear() {
+		lines.clear();
+		totalMinor = 0;
+	}
+
+	/**
+	 * Replaces the lines and total with those of {@code source}, keeping the existing line rows of items present
+	 * in both carts.
+	 */
+	public void copyContentsFrom(Cart source) {
+		lines.keySet().retainAll(source.lines.keySet());
+		for (CartLine sourceLine : source.lines.values()) {
+			CartLine line = lines.get(sourceLine.getItemId());
+			if (line == null) {
+				line = new CartLine(this, sourceLine.getItem());
+				lines.put(sourceLine.getItemId(), line);
+			}
+			line.setQuantity(sourceLine.getQuantity());
+			line.setUnitPriceMinor(sourceLine.getUnitPriceMinor());
+		}
+		totalMinor = source.totalMinor;
+	}
+
+	/**
+	 * Whether both carts hold the same items, in the same quantities, at the same unit prices.
+	 */
+	public boolean hasSameContents(Cart other) {
+		if (totalMinor != other.totalMinor || lines.size() != other.lines.size()) {
+			return false;
 		}
-		items.remove(item);
-		total = total.subtract(item.getPrice());
-		if (total.longValue() < 0) {
-			total = new BigDecimal(0);
+		for (CartLine line : lines.values()) {
+			CartLine otherLine = other.lines.get(line.getItemId());
+			if (otherLine == null || otherLine.getQuantity() != line.getQuantity()
+					|| otherLine.getUnitPriceMinor() != line.getUnitPriceMinor()) {
+				return false;
+			}
 		}
+		return true;
+	}
+
+	/**
+	 * @return a detached deep copy of this cart that shares only the user and item references
+	 */
+	public Cart copy() {
+		Cart copy = new Cart();
+		copy.id = id;
+		copy.user = user;
+		copy.version = version;
+		copy.copyContentsFrom(this);
+		return copy;
 	}
 }
@@ -0,0 +1,115 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One row per distinct item in a cart, carrying the quantity and the unit price the item was added at.
+ */
+@Entity
+@Table(name = "cart_line", uniqueConstraints = @UniqueConstraint(columnNames = {"cart_id", "item_id"}))
+public class CartLine {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_line_seq")
+	@SequenceGenerator(name = "cart_line_seq", sequenceName = "cart_line_seq", allocationSize = 50)
+	@JsonIgnore
+	private Long id;
+
+	@ManyToOne(optional = false)
+	@JoinColumn(name = "cart_id", nullable = false)
+	@JsonIgnore
+	private Cart cart;
+
+	@Column(name = "item_id", nullable = false)
+	@JsonProperty
+	private Long itemId;
+
+	@ManyToOne(optional = false)
+	@JoinColumn(name = "item_id", insertable = false, updatable = false)
+	@JsonProperty
+	private Item item;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	@Column(name = "unit_price_minor", nullable = false, columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private long unitPriceMinor;
+
+	public CartLine() {
+	}
+
+	public CartLine(Cart cart, Item item) {
+		this.cart = cart;
+		this.item = item;
+		this.itemId = item.getId();
+		this.unitPriceMinor = item.getPriceMinor();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Cart getCart() {
+		return cart;
+	}
+
+	public void setCart(Cart cart) {
+		this.cart = cart;
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public Item getItem() {
+		return item;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	@JsonProperty("unitPrice")
+	public BigDecimal getUnitPrice() {
+		return Money.toDecimal(unitPriceMinor);
+	}
+
+	public long getUnitPriceMinor() {
+		return unitPriceMinor;
+	}
+
+	public void setUnitPriceMinor(long unitPriceMinor) {
+		this.unitPriceMinor = unitPriceMinor;
+	}
+
+	/**
+	 * @return {@code unitPrice * quantity} in minor units
+	 */
+	@JsonIgnore
+	public long getLineTotalMinor() {
+		return Money.times(unitPriceMinor, quantity);
+	}
+}
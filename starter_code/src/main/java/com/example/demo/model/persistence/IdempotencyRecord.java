@@ -0,0 +1,86 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * Stored response of a request made with an {@code Idempotency-Key} header, replayed when the same request is
+ * retried with the same key. The key is stored as a SHA-256 hash of the endpoint scope and the client's key.
+ */
+@Entity
+@Table(name = "idempotency_record", indexes = @Index(name = "idx_idempotency_record_expires_at", columnList = "expires_at"))
+public class IdempotencyRecord {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "idempotency_record_seq")
+	@SequenceGenerator(name = "idempotency_record_seq", sequenceName = "idempotency_record_seq", allocationSize = 50)
+	private Long id;
+
+	@Column(name = "key_hash", nullable = false, unique = true, length = 64)
+	private String keyHash;
+
+	@Column(name = "request_hash", nullable = false, length = 64)
+	private String requestHash;
+
+	@Column(nullable = false)
+	private int status;
+
+	@Column(length = Integer.MAX_VALUE)
+	private String body;
+
+	@Column(name = "expires_at", nullable = false)
+	private long expiresAt;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getKeyHash() {
+		return keyHash;
+	}
+
+	public void setKeyHash(String keyHash) {
+		this.keyHash = keyHash;
+	}
+
+	public String getRequestHash() {
+		return requestHash;
+	}
+
+	public void setRequestHash(String requestHash) {
+		this.requestHash = requestHash;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+}
@@ -4,21 +4,27 @@ import java.math.BigDecimal;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.JoinColumn;
-import javax.persistence.ManyToOne;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.example.demo.services.ItemChangeListener;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
-@Table(name = "item")
+@Table(name = "item", indexes = {
+		@Index(name = "idx_item_name_id", columnList = "name, id"),
+		@Index(name = "idx_item_price_minor_id", columnList = "price_minor, id")})
+@EntityListeners(ItemChangeListener.class)
 public class Item {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_seq")
+	@SequenceGenerator(name = "item_seq", sequenceName = "item_seq", allocationSize = 50)
 	@JsonProperty
 	private Long id;
 	
@@ -26,9 +32,9 @@ public class Item {
 	@JsonProperty
 	private String name;
 	
-	@Column(nullable = false)
-	@JsonProperty
-	private BigDecimal price;
+	@Column(name = "price_minor", nullable = false, columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private long priceMinor;
 	
 	@Column(nullable = false)
 	@JsonProperty
@@ -75,12 +81,22 @@ public class Item {
 		this.name = name;
 	}
 
+	@JsonProperty("price")
 	public BigDecimal getPrice() {
-		return price;
+		return Money.toDecimal(priceMinor);
 	}
 
+	@JsonProperty("price")
 	public void setPrice(BigDecimal price) {
-		this.price = price;
+		this.priceMinor = Money.toMinorUnits(price);
+	}
+
+	public long getPriceMinor() {
+		return priceMinor;
+	}
+
+	public void setPriceMinor(long priceMinor) {
+		this.priceMinor = priceMinor;
 	}
 
 	public String getDescription() {
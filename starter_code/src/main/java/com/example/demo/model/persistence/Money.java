@@ -0,0 +1,38 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money amounts are stored and summed as {@code long} minor units (cents) of a single currency with
+ * {@link #SCALE} decimal places; {@link BigDecimal} is only used at the JSON and request boundary.
+ */
+public final class Money {
+	public static final int SCALE = 2;
+
+	private Money() {
+	}
+
+	/**
+	 * Converts a decimal amount to minor units, rounding half up to {@link #SCALE} places.
+	 *
+	 * @throws ArithmeticException when the amount does not fit in a {@code long}
+	 */
+	public static long toMinorUnits(BigDecimal amount) {
+		if (amount == null) {
+			return 0;
+		}
+		return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal toDecimal(long minorUnits) {
+		return BigDecimal.valueOf(minorUnits, SCALE);
+	}
+
+	/**
+	 * @throws ArithmeticException on overflow
+	 */
+	public static long times(long minorUnits, int quantity) {
+		return Math.multiplyExact(minorUnits, (long) quantity);
+	}
+}
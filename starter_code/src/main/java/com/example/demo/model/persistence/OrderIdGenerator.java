@@ -0,0 +1,21 @@
+package com.example.demo.model.persistence;
+
+import java.io.Serializable;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * Pooled {@code user_order_seq} generator that keeps the id an order was given by
+ * {@link UserOrder#setReservedId} before it was saved. Reserved ids are drawn from this very generator, so they
+ * never collide with the ids it hands out to other orders.
+ */
+public class OrderIdGenerator extends SequenceStyleGenerator {
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) {
+		if (object instanceof UserOrder && ((UserOrder) object).getReservedId() != null) {
+			return ((UserOrder) object).getReservedId();
+		}
+		return super.generate(session, object);
+	}
+}
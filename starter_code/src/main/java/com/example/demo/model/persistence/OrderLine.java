@@ -0,0 +1,79 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Snapshot of one distinct item of an order as it was when the order was placed: its name and unit price are
+ * copied from the cart, so later catalogue changes never alter an order. Written once with its order and never
+ * updated; {@code item_id} is kept for reference only and has no foreign key to {@code item}.
+ */
+@Entity
+@Immutable
+@Table(name = "order_line")
+public class OrderLine {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_line_seq")
+	@SequenceGenerator(name = "order_line_seq", sequenceName = "order_line_seq", allocationSize = 50)
+	private Long id;
+
+	@ManyToOne(optional = false)
+	@JoinColumn(name = "order_id", nullable = false)
+	private UserOrder order;
+
+	@Column(name = "item_id", nullable = false)
+	private long itemId;
+
+	@Column(nullable = false)
+	private String name;
+
+	@Column(name = "unit_price_minor", nullable = false)
+	private long unitPriceMinor;
+
+	@Column(nullable = false)
+	private int quantity;
+
+	protected OrderLine() {
+	}
+
+	public OrderLine(UserOrder order, CartLine line) {
+		this.order = order;
+		this.itemId = line.getItemId();
+		this.name = line.getItem().getName();
+		this.unitPriceMinor = line.getUnitPriceMinor();
+		this.quantity = line.getQuantity();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public UserOrder getOrder() {
+		return order;
+	}
+
+	public long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getUnitPriceMinor() {
+		return unitPriceMinor;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+}
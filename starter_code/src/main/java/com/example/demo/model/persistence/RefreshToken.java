@@ -0,0 +1,99 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * Server-side record of an issued refresh token. Only the SHA-256 hash of the token is stored; every rotation
+ * revokes the presented token and issues a new one in the same family.
+ */
+@Entity
+@Table(name = "refresh_token", indexes = {
+		@Index(name = "idx_refresh_token_family", columnList = "family_id"),
+		@Index(name = "idx_refresh_token_expires_at", columnList = "expires_at")})
+public class RefreshToken {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_token_seq")
+	@SequenceGenerator(name = "refresh_token_seq", sequenceName = "refresh_token_seq", allocationSize = 50)
+	private Long id;
+
+	@Column(name = "token_hash", nullable = false, unique = true, length = 64)
+	private String tokenHash;
+
+	@Column(name = "family_id", nullable = false, length = 36)
+	private String familyId;
+
+	@Column(name = "user_id", nullable = false)
+	private long userId;
+
+	@Column(nullable = false)
+	private String username;
+
+	@Column(name = "expires_at", nullable = false)
+	private long expiresAt;
+
+	@Column(nullable = false)
+	private boolean revoked;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
+	}
+
+	public String getFamilyId() {
+		return familyId;
+	}
+
+	public void setFamilyId(String familyId) {
+		this.familyId = familyId;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public void setUserId(long userId) {
+		this.userId = userId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	public boolean isRevoked() {
+		return revoked;
+	}
+
+	public void setRevoked(boolean revoked) {
+		this.revoked = revoked;
+	}
+}
@@ -3,7 +3,6 @@ package com.example.demo.model.persistence;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
@@ -11,36 +10,60 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
-import javax.persistence.JoinTable;
-import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
-@Table(name = "user_order")
+@Table(name = "user_order", indexes = @Index(name = "idx_user_order_user_id_id", columnList = "user_id, id"))
 public class UserOrder {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_order_seq")
+	@GenericGenerator(name = "user_order_seq", strategy = "com.example.demo.model.persistence.OrderIdGenerator",
+			parameters = {
+					@Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "user_order_seq"),
+					@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50") })
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany(cascade = CascadeType.ALL)
-	@JsonProperty
-	@Column
-    private List<Item> items;
+	@OneToMany(mappedBy = "order", cascade = CascadeType.PERSIST)
+	@OrderBy("id")
+	private List<OrderLine> lines = new ArrayList<>();
 	
 	@ManyToOne
 	@JoinColumn(name="user_id", nullable = false, referencedColumnName = "id")
 	@JsonProperty
     private User user;
 	
-	@JsonProperty
-	@Column
-	private BigDecimal total;
+	@Column(name = "total_minor", nullable = false, columnDefinition = "bigint default 0")
+	@JsonIgnore
+	private long totalMinor;
+
+	/**
+	 * Epoch milliseconds; {@code null} for orders placed before it was recorded.
+	 */
+	@Column(name = "created_at")
+	@JsonIgnore
+	private Long createdAt;
+
+	/**
+	 * Id drawn beforehand through {@link OrderIdGenerator}, taken as the order's id when it is saved.
+	 */
+	@Transient
+	@JsonIgnore
+	private Long reservedId;
 
 	public Long getId() {
 		return id;
@@ -50,12 +73,8 @@ public class UserOrder {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
-		return items;
-	}
-
-	public void setItems(List<Item> items) {
-		this.items = items;
+	public List<OrderLine> getLines() {
+		return lines;
 	}
 
 	public User getUser() {
@@ -66,19 +85,50 @@ public class UserOrder {
 		this.user = user;
 	}
 	
+	@JsonProperty("total")
 	public BigDecimal getTotal() {
-		return total;
+		return Money.toDecimal(totalMinor);
 	}
 
 	public void setTotal(BigDecimal total) {
-		this.total = total;
+		this.totalMinor = Money.toMinorUnits(total);
+	}
+
+	public long getTotalMinor() {
+		return totalMinor;
+	}
+
+	public void setTotalMinor(long totalMinor) {
+		this.totalMinor = totalMinor;
+	}
+
+	public Long getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Long createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public Long getReservedId() {
+		return reservedId;
+	}
+
+	public void setReservedId(Long reservedId) {
+		this.reservedId = reservedId;
 	}
 
+	/**
+	 * Creates an order with one line per distinct item of the cart, at the cart's unit prices.
+	 */
 	public static UserOrder createFromCart(Cart cart) {
 		UserOrder order = new UserOrder();
-		order.setItems(new ArrayList<>(cart.getItems()));
-		order.setTotal(cart.getTotal());
+		for (CartLine line : cart.getLines()) {
+			order.lines.add(new OrderLine(order, line));
+		}
+		order.setTotalMinor(cart.getTotalMinor());
 		order.setUser(cart.getUser());
+		order.setCreatedAt(System.currentTimeMillis());
 		return order;
 	}
 }
@@ -0,0 +1,56 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Running totals of a user's orders, kept up to date in the transaction that places each order so that they can be
+ * read without loading the orders. Users without orders have no row.
+ */
+@Entity
+@Table(name = "user_order_summary")
+public class UserOrderSummary {
+	@Id
+	@Column(name = "user_id")
+	private long userId;
+
+	@Column(name = "order_count", nullable = false)
+	private long orderCount;
+
+	@Column(name = "total_spent_minor", nullable = false)
+	private long totalSpentMinor;
+
+	/**
+	 * Epoch milliseconds of the latest order, or {@code null} when none of the orders recorded the time.
+	 */
+	@Column(name = "last_order_at")
+	private Long lastOrderAt;
+
+	protected UserOrderSummary() {
+	}
+
+	public UserOrderSummary(long userId, long orderCount, long totalSpentMinor, Long lastOrderAt) {
+		this.userId = userId;
+		this.orderCount = orderCount;
+		this.totalSpentMinor = totalSpentMinor;
+		this.lastOrderAt = lastOrderAt;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public long getOrderCount() {
+		return orderCount;
+	}
+
+	public long getTotalSpentMinor() {
+		return totalSpentMinor;
+	}
+
+	public Long getLastOrderAt() {
+		return lastOrderAt;
+	}
+}
@@ -1,13 +1,34 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.Cart;
-import com.example.demo.model.persistence.User;
 
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
-	Cart findByUser(User user);
+	@Modifying
+	@Query("delete from CartLine l where l.cart.id in :cartIds")
+	int deleteLines(@Param("cartIds") Collection<Long> cartIds);
+
+	@Modifying
+	@Query("update Cart c set c.totalMinor = 0 where c.id in :cartIds")
+	int clearTotals(@Param("cartIds") Collection<Long> cartIds);
+
+	/**
+	 * Locks the carts of the given users until the end of the transaction, in id order.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select c from User u join u.cart c where u.id in :userIds order by c.id")
+	List<Cart> lockByUserIds(@Param("userIds") Collection<Long> userIds);
 }
@@ -0,0 +1,18 @@
+package com.example.demo.model.persistence.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.model.persistence.IdempotencyRecord;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+	IdempotencyRecord findByKeyHash(String keyHash);
+
+	@Modifying
+	@Query("delete from IdempotencyRecord r where r.expiresAt < :now")
+	int deleteExpired(@Param("now") long now);
+}
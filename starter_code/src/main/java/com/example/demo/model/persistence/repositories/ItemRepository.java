@@ -2,7 +2,11 @@ package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.Item;
 import org.springframework.stereotype.Repository;
@@ -11,4 +15,29 @@ import org.springframework.stereotype.Repository;
 public interface ItemRepository extends JpaRepository<Item, Long> {
 	List<Item> findByName(String name);
 
+	/**
+	 * Returns one page of items without counting them all, unlike {@link #findAll(Pageable)}.
+	 */
+	Slice<Item> findAllBy(Pageable pageable);
+
+	/**
+	 * Returns the items after {@code afterId} in id order, as one keyset page of the catalogue.
+	 */
+	@Query("select i from Item i where i.id > :afterId order by i.id")
+	List<Item> findAfterId(@Param("afterId") long afterId, Pageable pageable);
+
+	/**
+	 * Returns the items after the item with the given name and id in name order, as one keyset page of the
+	 * catalogue.
+	 */
+	@Query("select i from Item i where i.name > :name or (i.name = :name and i.id > :afterId) order by i.name, i.id")
+	List<Item> findAfterName(@Param("name") String name, @Param("afterId") long afterId, Pageable pageable);
+
+	/**
+	 * Returns the items after the item with the given price and id in price order, as one keyset page of the
+	 * catalogue.
+	 */
+	@Query("select i from Item i where i.priceMinor > :priceMinor or (i.priceMinor = :priceMinor and i.id > :afterId) "
+			+ "order by i.priceMinor, i.id")
+	List<Item> findAfterPrice(@Param("priceMinor") long priceMinor, @Param("afterId") long afterId, Pageable pageable);
 }
@@ -0,0 +1,17 @@
+package com.example.demo.model.persistence.repositories;
+
+/**
+ * Projection of one order line with its order's creation time, as returned by
+ * {@link OrderRepository#findSalesByOrderIds}.
+ */
+public interface ItemSaleView {
+	long getOrderId();
+
+	Long getCreatedAt();
+
+	long getItemId();
+
+	int getQuantity();
+
+	long getUnitPriceMinor();
+}
@@ -0,0 +1,12 @@
+package com.example.demo.model.persistence.repositories;
+
+/**
+ * Projection of the lifetime sales of one item, as returned by {@link OrderRepository#sumSalesByItem}.
+ */
+public interface ItemSalesTotalView {
+	long getItemId();
+
+	long getUnits();
+
+	long getRevenueMinor();
+}
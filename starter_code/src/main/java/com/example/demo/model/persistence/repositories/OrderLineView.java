@@ -0,0 +1,18 @@
+package com.example.demo.model.persistence.repositories;
+
+/**
+ * Projection of one line of an order, as returned by {@link OrderRepository#findLinesByOrderIds}.
+ */
+public interface OrderLineView {
+	long getOrderId();
+
+	long getTotalMinor();
+
+	Long getItemId();
+
+	String getName();
+
+	Long getPriceMinor();
+
+	Integer getQuantity();
+}
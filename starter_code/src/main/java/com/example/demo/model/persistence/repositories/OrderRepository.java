@@ -1,14 +1,61 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderSummary;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface OrderRepository extends JpaRepository<UserOrder, Long> {
-	List<UserOrder> findByUser(User user);
+	/**
+	 * Returns the ids of a user's orders after {@code afterId}, in ascending order, as one keyset page of the
+	 * order history.
+	 */
+	@Query("select o.id from UserOrder o where o.user.id = :userId and o.id > :afterId order by o.id")
+	List<Long> findIdsByUserIdAfter(@Param("userId") long userId, @Param("afterId") long afterId, Pageable pageable);
+
+	/**
+	 * Loads the given orders with their line snapshots in one query, ordered by order id. Only
+	 * {@code user_order} and {@code order_line} are read; an order without lines comes as a single row with a
+	 * {@code null} item id.
+	 */
+	@Query("select o.id as orderId, o.totalMinor as totalMinor, l.itemId as itemId, l.name as name, "
+			+ "l.unitPriceMinor as priceMinor, l.quantity as quantity "
+			+ "from UserOrder o left join o.lines l where o.id in :orderIds order by o.id, l.id")
+	List<OrderLineView> findLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Returns the ids of the orders created at or after {@code since} with an id after {@code afterId}, in
+	 * ascending order, as one keyset page.
+	 */
+	@Query("select o.id from UserOrder o where o.createdAt >= :since and o.id > :afterId order by o.id")
+	List<Long> findIdsCreatedSince(@Param("since") long since, @Param("afterId") long afterId, Pageable pageable);
+
+	/**
+	 * Loads the lines of the given orders with their order's creation time.
+	 */
+	@Query("select o.id as orderId, o.createdAt as createdAt, l.itemId as itemId, l.quantity as quantity, "
+			+ "l.unitPriceMinor as unitPriceMinor from UserOrder o join o.lines l where o.id in :orderIds")
+	List<ItemSaleView> findSalesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Sums the units sold and the revenue of every item ever ordered, one row per item.
+	 */
+	@Query("select l.itemId as itemId, sum(l.quantity) as units, sum(l.quantity * l.unitPriceMinor) as revenueMinor "
+			+ "from OrderLine l group by l.itemId")
+	List<ItemSalesTotalView> sumSalesByItem();
+
+	/**
+	 * Computes the order summaries of the given users from their orders; users without orders are absent.
+	 */
+	@Query("select new com.example.demo.model.persistence.UserOrderSummary(o.user.id, count(o), sum(o.totalMinor), "
+			+ "max(o.createdAt)) from UserOrder o where o.user.id in :userIds group by o.user.id")
+	List<UserOrderSummary> summarizeByUserIds(@Param("userIds") Collection<Long> userIds);
 }
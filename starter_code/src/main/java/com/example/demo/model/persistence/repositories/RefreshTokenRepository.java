@@ -0,0 +1,29 @@
+package com.example.demo.model.persistence.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.model.persistence.RefreshToken;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+	RefreshToken findByTokenHash(String tokenHash);
+
+	/**
+	 * @return 1 when this call revoked the token, 0 when it had already been revoked by a concurrent rotation
+	 */
+	@Modifying
+	@Query("update RefreshToken t set t.revoked = true where t.id = :id and t.revoked = false")
+	int revokeIfActive(@Param("id") long id);
+
+	@Modifying
+	@Query("update RefreshToken t set t.revoked = true where t.familyId = :familyId and t.revoked = false")
+	int revokeFamily(@Param("familyId") String familyId);
+
+	@Modifying
+	@Query("delete from RefreshToken t where t.expiresAt < :now")
+	int deleteExpired(@Param("now") long now);
+}
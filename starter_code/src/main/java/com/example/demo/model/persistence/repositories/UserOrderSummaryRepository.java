@@ -0,0 +1,28 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.model.persistence.UserOrderSummary;
+
+@Repository
+public interface UserOrderSummaryRepository extends JpaRepository<UserOrderSummary, Long> {
+	/**
+	 * Adds an order to the user's summary.
+	 *
+	 * @return 0 when the user has no summary yet
+	 */
+	@Modifying
+	@Query("update UserOrderSummary s set s.orderCount = s.orderCount + 1, "
+			+ "s.totalSpentMinor = s.totalSpentMinor + :totalMinor, s.lastOrderAt = :orderedAt where s.userId = :userId")
+	int addOrder(@Param("userId") long userId, @Param("totalMinor") long totalMinor, @Param("orderedAt") Long orderedAt);
+
+	@Modifying
+	@Query("delete from UserOrderSummary s where s.userId in :userIds")
+	int deleteByUserIds(@Param("userIds") Collection<Long> userIds);
+}
@@ -1,11 +1,25 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.responses.UserResponse;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 	User findByUsername(String username);
+
+	@Query("select new com.example.demo.model.responses.UserResponse(u.id, u.username, c.id) "
+			+ "from User u left join u.cart c where u.id = :id")
+	Optional<UserResponse> findResponseById(@Param("id") long id);
+
+	@Query("select u.id from User u where u.id > :afterId order by u.id")
+	List<Long> findIdsAfter(@Param("afterId") long afterId, Pageable pageable);
 }
@@ -0,0 +1,49 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class CartLineResponse {
+	@JsonProperty
+	private final long itemId;
+
+	@JsonProperty
+	private final String name;
+
+	@JsonProperty
+	private final int quantity;
+
+	@JsonProperty
+	private final BigDecimal unitPrice;
+
+	public CartLineResponse(long itemId, String name, int quantity, BigDecimal unitPrice) {
+		this.itemId = itemId;
+		this.name = name;
+		this.quantity = quantity;
+		this.unitPrice = unitPrice;
+	}
+
+	public static CartLineResponse of(CartLine line) {
+		return new CartLineResponse(line.getItemId(), line.getItem().getName(), line.getQuantity(),
+				Money.toDecimal(line.getUnitPriceMinor()));
+	}
+
+	public long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public BigDecimal getUnitPrice() {
+		return unitPrice;
+	}
+}
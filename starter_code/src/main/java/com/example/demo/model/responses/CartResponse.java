@@ -0,0 +1,64 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body of the {@code /api/cart} endpoints: the cart's lines and total, without its user or the item
+ * descriptions.
+ */
+public class CartResponse {
+	@JsonProperty
+	private final long id;
+
+	@JsonProperty
+	private final List<CartLineResponse> lines;
+
+	@JsonProperty
+	private final BigDecimal total;
+
+	public CartResponse(long id, List<CartLineResponse> lines, BigDecimal total) {
+		this.id = id;
+		this.lines = lines;
+		this.total = total;
+	}
+
+	/**
+	 * Copies the response out of a loaded cart, so it can be built inside the cart's transaction and serialized
+	 * without touching the persistence context.
+	 */
+	public static CartResponse of(Cart cart) {
+		List<CartLineResponse> lines = new ArrayList<>(cart.getLines().size());
+		for (CartLine line : cart.getLines()) {
+			lines.add(CartLineResponse.of(line));
+		}
+		return new CartResponse(cart.getId(), lines, Money.toDecimal(cart.getTotalMinor()));
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public List<CartLineResponse> getLines() {
+		return lines;
+	}
+
+	public CartLineResponse getLine(long itemId) {
+		for (CartLineResponse line : lines) {
+			if (line.getItemId() == itemId) {
+				return line;
+			}
+		}
+		return null;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+}
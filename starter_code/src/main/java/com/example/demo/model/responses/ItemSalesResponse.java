@@ -0,0 +1,46 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One entry of the top-selling items of {@code /api/admin/analytics/top-items}. The name is absent for an item
+ * that has since been deleted.
+ */
+public class ItemSalesResponse {
+	@JsonProperty
+	private final long itemId;
+
+	@JsonProperty
+	private final String name;
+
+	@JsonProperty
+	private final long unitsSold;
+
+	@JsonProperty
+	private final BigDecimal revenue;
+
+	public ItemSalesResponse(long itemId, String name, long unitsSold, BigDecimal revenue) {
+		this.itemId = itemId;
+		this.name = name;
+		this.unitsSold = unitsSold;
+		this.revenue = revenue;
+	}
+
+	public long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getUnitsSold() {
+		return unitsSold;
+	}
+
+	public BigDecimal getRevenue() {
+		return revenue;
+	}
+}
@@ -0,0 +1,58 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One line of the order export of {@code /api/admin/orders/export}. The creation time is in epoch milliseconds
+ * and absent for orders placed before it was recorded.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderExportRecord {
+	@JsonProperty
+	private final long id;
+
+	@JsonProperty
+	private final long userId;
+
+	@JsonProperty
+	private final Long createdAt;
+
+	@JsonProperty
+	private final BigDecimal total;
+
+	@JsonProperty
+	private final List<OrderLineResponse> lines;
+
+	public OrderExportRecord(long id, long userId, Long createdAt, BigDecimal total, List<OrderLineResponse> lines) {
+		this.id = id;
+		this.userId = userId;
+		this.createdAt = createdAt;
+		this.total = total;
+		this.lines = lines == null ? new ArrayList<>() : lines;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public Long getCreatedAt() {
+		return createdAt;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+
+	public List<OrderLineResponse> getLines() {
+		return lines;
+	}
+}
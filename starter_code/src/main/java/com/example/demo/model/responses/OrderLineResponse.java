@@ -0,0 +1,42 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class OrderLineResponse {
+	@JsonProperty
+	private final long itemId;
+
+	@JsonProperty
+	private final String name;
+
+	@JsonProperty
+	private final int quantity;
+
+	@JsonProperty
+	private final BigDecimal unitPrice;
+
+	public OrderLineResponse(long itemId, String name, int quantity, BigDecimal unitPrice) {
+		this.itemId = itemId;
+		this.name = name;
+		this.quantity = quantity;
+		this.unitPrice = unitPrice;
+	}
+
+	public long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public BigDecimal getUnitPrice() {
+		return unitPrice;
+	}
+}
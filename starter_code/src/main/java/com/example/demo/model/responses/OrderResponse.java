@@ -0,0 +1,76 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.repositories.OrderLineView;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body of the {@code /api/order} endpoints: one line per distinct item with its quantity, instead of
+ * the order's user and a full item entity per unit.
+ */
+public class OrderResponse {
+	@JsonProperty
+	private final long id;
+
+	@JsonProperty
+	private final List<OrderLineResponse> lines;
+
+	@JsonProperty
+	private final BigDecimal total;
+
+	public OrderResponse(long id, List<OrderLineResponse> lines, BigDecimal total) {
+		this.id = id;
+		this.lines = lines;
+		this.total = total;
+	}
+
+	/**
+	 * Builds the response of an order just created from {@code cart}, before the cart is cleared.
+	 */
+	public static OrderResponse of(long orderId, Cart cart) {
+		List<OrderLineResponse> lines = new ArrayList<>(cart.getLines().size());
+		for (CartLine line : cart.getLines()) {
+			lines.add(new OrderLineResponse(line.getItemId(), line.getItem().getName(), line.getQuantity(),
+					Money.toDecimal(line.getUnitPriceMinor())));
+		}
+		return new OrderResponse(orderId, lines, Money.toDecimal(cart.getTotalMinor()));
+	}
+
+	/**
+	 * Groups rows ordered by order id into one response per order. An order without items comes as a single row
+	 * with a {@code null} item id.
+	 */
+	public static List<OrderResponse> fromRows(List<OrderLineView> rows) {
+		List<OrderResponse> orders = new ArrayList<>();
+		OrderResponse current = null;
+		for (OrderLineView row : rows) {
+			if (current == null || current.id != row.getOrderId()) {
+				current = new OrderResponse(row.getOrderId(), new ArrayList<>(), Money.toDecimal(row.getTotalMinor()));
+				orders.add(current);
+			}
+			if (row.getItemId() != null) {
+				current.lines.add(new OrderLineResponse(row.getItemId(), row.getName(),
+						row.getQuantity(), Money.toDecimal(row.getPriceMinor())));
+			}
+		}
+		return orders;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public List<OrderLineResponse> getLines() {
+		return lines;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+}
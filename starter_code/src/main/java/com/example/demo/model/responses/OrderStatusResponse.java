@@ -0,0 +1,51 @@
+package com.example.demo.model.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body of an asynchronous order submission and of its status endpoint. The order id is allocated when the
+ * submission is accepted and is the id the order is created with; the order is present once the submission has
+ * completed, and the error once it has failed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderStatusResponse {
+	public enum Status {
+		QUEUED, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private final long orderId;
+
+	@JsonProperty
+	private final Status status;
+
+	@JsonProperty
+	private final OrderResponse order;
+
+	@JsonProperty
+	private final String error;
+
+	public OrderStatusResponse(long orderId, Status status, OrderResponse order, String error) {
+		this.orderId = orderId;
+		this.status = status;
+		this.order = order;
+		this.error = error;
+	}
+
+	public long getOrderId() {
+		return orderId;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public OrderResponse getOrder() {
+		return order;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,44 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.UserOrderSummary;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body of {@code /api/order/summary}. The time of the last order is in epoch milliseconds.
+ */
+public class OrderSummaryResponse {
+	@JsonProperty
+	private final long orderCount;
+
+	@JsonProperty
+	private final BigDecimal totalSpent;
+
+	@JsonProperty
+	private final Long lastOrderAt;
+
+	public OrderSummaryResponse(long orderCount, BigDecimal totalSpent, Long lastOrderAt) {
+		this.orderCount = orderCount;
+		this.totalSpent = totalSpent;
+		this.lastOrderAt = lastOrderAt;
+	}
+
+	public static OrderSummaryResponse of(UserOrderSummary summary) {
+		return new OrderSummaryResponse(summary.getOrderCount(), Money.toDecimal(summary.getTotalSpentMinor()),
+				summary.getLastOrderAt());
+	}
+
+	public long getOrderCount() {
+		return orderCount;
+	}
+
+	public BigDecimal getTotalSpent() {
+		return totalSpent;
+	}
+
+	public Long getLastOrderAt() {
+		return lastOrderAt;
+	}
+}
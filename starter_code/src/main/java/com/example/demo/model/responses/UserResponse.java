@@ -0,0 +1,35 @@
+package com.example.demo.model.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body of the {@code /api/user} endpoints. The password hash is never part of it.
+ */
+public class UserResponse {
+	@JsonProperty
+	private final long id;
+
+	@JsonProperty
+	private final String username;
+
+	@JsonProperty
+	private final Long cartId;
+
+	public UserResponse(long id, String username, Long cartId) {
+		this.id = id;
+		this.username = username;
+		this.cartId = cartId;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public Long getCartId() {
+		return cartId;
+	}
+}
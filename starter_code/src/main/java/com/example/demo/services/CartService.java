@@ -0,0 +1,332 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.CartOperation;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-modify-write access to carts without lost updates.
+ * <p>
+ * Every modification runs in its own transaction that starts by locking the cart row with
+ * {@code SELECT ... FOR UPDATE} and bumping its version, and only then reads the lines, so concurrent writers of
+ * one cart queue on the database lock and each sees the lines its predecessor committed. Plain {@code @Version}
+ * checks are not enough on H2 1.4.199: its read-committed reads are not statement-consistent, a line inserted by a
+ * concurrent writer fails on the unique constraint before the version is checked, and a version-checked update
+ * that waited on the row lock is applied to the stale row. A modification whose lock wait times out or deadlocks
+ * is re-applied in a new transaction, up to {@code cart.update.max-attempts} times. With
+ * {@code cart.update.striped-locking} enabled, modifications of the same cart are additionally serialised
+ * in-process on one of a fixed set of lock stripes, so that on a single node they queue on a monitor instead of
+ * holding database connections while they wait.
+ */
+@Service
+public class CartService implements MeterBinder {
+    Logger logger = LogManager.getLogger(CartService.class);
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private WriteBehindCartStore writeBehindStore;
+
+    @Value("${cart.update.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${cart.update.retry-backoff-ms:5}")
+    private long retryBackoffMillis;
+
+    @Value("${cart.update.striped-locking:false}")
+    private boolean stripedLocking;
+
+    @Value("${cart.update.lock-stripes:64}")
+    private int lockStripes;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Object[] stripes;
+
+    private final LongAdder conflicts = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        int stripeSize = Integer.highestOneBit(Math.max(1, lockStripes - 1) << 1);
+        stripes = new Object[stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Applies {@code mutation} to the cart and commits it, retrying when the cart lock cannot be taken. The
+     * mutation may be invoked more than once and must only act on the cart it is given and the current transaction.
+     * With {@code cart.write-behind.enabled}, the mutation is applied in memory and persisted by
+     * {@link WriteBehindCartStore} instead.
+     *
+     * @return the mutation's result, or empty when the cart does not exist
+     * @throws RetryLaterException with 409 when the cart lock could not be taken in any attempt
+     */
+    public <T> Optional<T> modify(long cartId, Function<Cart, T> mutation) {
+        if (writeBehindStore.isEnabled()) {
+            return writeBehindStore.modify(cartId, mutation);
+        }
+        return modifyStored(cartId, mutation);
+    }
+
+    /**
+     * Hands the current cart, including any pending in-memory changes, to {@code view} without locking or changing
+     * it. The cart given to {@code view} must only be read.
+     *
+     * @return the view's result, or empty when the cart does not exist
+     */
+    public <T> Optional<T> read(long cartId, Function<Cart, T> view) {
+        if (writeBehindStore.isEnabled()) {
+            return writeBehindStore.read(cartId, view);
+        }
+        return transactionTemplate.execute(status -> {
+            Cart cart = entityManager.find(Cart.class, cartId);
+            return cart == null ? Optional.<T>empty() : Optional.ofNullable(view.apply(cart));
+        });
+    }
+
+    /**
+     * Hands the stored cart to {@code consumer} and then empties it in the same transaction, with one bulk delete of
+     * its lines and one update of its total instead of one delete per line. Any pending in-memory changes are
+     * written first. Used where the cart has effects beyond itself, such as creating an order from it; the cart
+     * given to {@code consumer} must only be read. When {@code consumer} returns {@code null} the cart is left as it
+     * is.
+     */
+    public <T> Optional<T> checkout(long cartId, Function<Cart, T> consumer) {
+        if (writeBehindStore.isEnabled()) {
+            return writeBehindStore.flushAndEvict(cartId, () -> modifyStored(cartId, consumer, true));
+        }
+        return modifyStored(cartId, consumer, true);
+    }
+
+    /**
+     * Checks out several carts in a single transaction, as {@link #checkout} does for one, so that everything
+     * created from them is committed together. The carts are locked in id order and emptied with one bulk delete
+     * and one update for the whole group. There is no retry: on any failure nothing is changed and the exception is
+     * rethrown, and the caller may fall back to checking the carts out one at a time.
+     *
+     * @return the consumer's result per cart id; carts that do not exist, or for which the consumer returned
+     * {@code null} and which are therefore left as they are, are absent
+     */
+    public <T> Map<Long, T> checkoutAll(Collection<Long> cartIds, Function<Cart, T> consumer) {
+        List<Long> ids = new ArrayList<>(new TreeSet<>(cartIds));
+        if (writeBehindStore.isEnabled()) {
+            return writeBehindStore.flushAndEvictAll(ids, () -> checkoutAllStored(ids, consumer));
+        }
+        return checkoutAllStored(ids, consumer);
+    }
+
+    private <T> Optional<T> modifyStored(long cartId, Function<Cart, T> mutation) {
+        return modifyStored(cartId, mutation, false);
+    }
+
+    private <T> Optional<T> modifyStored(long cartId, Function<Cart, T> mutation, boolean clear) {
+        if (stripedLocking) {
+            synchronized (stripeFor(cartId)) {
+                return modifyWithRetry(cartId, mutation, clear);
+            }
+        }
+        return modifyWithRetry(cartId, mutation, clear);
+    }
+
+    private <T> Map<Long, T> checkoutAllStored(List<Long> cartIds, Function<Cart, T> consumer) {
+        if (stripedLocking) {
+            // stripes are taken in index order, so concurrent group checkouts cannot deadlock
+            SortedSet<Integer> indexes = new TreeSet<>();
+            for (Long cartId : cartIds) {
+                indexes.add(stripeIndex(cartId));
+            }
+            return withStripes(new ArrayList<>(indexes), 0, () -> checkoutAllInTransaction(cartIds, consumer));
+        }
+        return checkoutAllInTransaction(cartIds, consumer);
+    }
+
+    private <T> Map<Long, T> checkoutAllInTransaction(List<Long> cartIds, Function<Cart, T> consumer) {
+        return transactionTemplate.execute(status -> {
+            Map<Long, T> results = new LinkedHashMap<>();
+            for (Long cartId : cartIds) {
+                Cart cart = entityManager.find(Cart.class, cartId, LockModeType.PESSIMISTIC_FORCE_INCREMENT);
+                T result = cart == null ? null : consumer.apply(cart);
+                if (result != null) {
+                    results.put(cartId, result);
+                }
+            }
+            if (!results.isEmpty()) {
+                entityManager.flush();
+                entityManager.clear();
+                cartRepository.deleteLines(results.keySet());
+                cartRepository.clearTotals(results.keySet());
+            }
+            return results;
+        });
+    }
+
+    private <T> T withStripes(List<Integer> indexes, int from, Supplier<T> action) {
+        if (from == indexes.size()) {
+            return action.get();
+        }
+        synchronized (stripes[indexes.get(from)]) {
+            return withStripes(indexes, from + 1, action);
+        }
+    }
+
+    /**
+     * Applies all operations to the cart in one transaction: the referenced items are resolved with a single
+     * {@code findAllById}, the cart and then its lines with one query each, and the changes are flushed once on
+     * commit. Operations are applied in order, so a later operation on the same item sees the earlier ones.
+     *
+     * @param view maps the updated cart to the caller's result inside the transaction
+     * @return the mapped cart, or empty when the cart or any referenced item does not exist, in which case nothing
+     * is changed
+     */
+    public <T> Optional<T> applyBatch(long cartId, List<CartOperation> operations, Function<Cart, T> view) {
+        Set<Long> itemIds = new LinkedHashSet<>();
+        for (CartOperation operation : operations) {
+            itemIds.add(operation.getItemId());
+        }
+        Map<Long, Item> items = new HashMap<>();
+        for (Item item : itemRepository.findAllById(itemIds)) {
+            items.put(item.getId(), item);
+        }
+        if (items.size() != itemIds.size()) {
+            return Optional.empty();
+        }
+
+        return modify(cartId, cart -> {
+            for (CartOperation operation : operations) {
+                Item item = items.get(operation.getItemId());
+                switch (operation.getType()) {
+                    case ADD:
+                        cart.addItem(item, operation.getQuantity());
+                        break;
+                    case REMOVE:
+                        cart.removeItem(item, operation.getQuantity());
+                        break;
+                    case SET:
+                        cart.setItemQuantity(item, operation.getQuantity());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported cart operation " + operation.getType());
+                }
+            }
+            return view.apply(cart);
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cart.update.conflicts", conflicts, LongAdder::sum)
+                .description("Cart modifications retried after a lock timeout or deadlock")
+                .register(registry);
+        FunctionCounter.builder("cart.update.exhausted", exhausted, LongAdder::sum)
+                .description("Cart modifications rejected after exhausting their retries")
+                .register(registry);
+    }
+
+    private <T> Optional<T> modifyWithRetry(long cartId, Function<Cart, T> mutation, boolean clear) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    // the cart row is locked for update and its version bumped before anything else is read, and the
+                    // lines are loaded lazily only afterwards, so they are never older than the locked cart
+                    Cart cart = entityManager.find(Cart.class, cartId, LockModeType.PESSIMISTIC_FORCE_INCREMENT);
+                    if (cart == null) {
+                        return Optional.<T>empty();
+                    }
+                    T result = mutation.apply(cart);
+                    if (clear && result != null) {
+                        // everything is written and then detached, so the commit does not also delete the lines one
+                        // by one as orphans
+                        entityManager.flush();
+                        entityManager.clear();
+                        cartRepository.deleteLines(Collections.singleton(cartId));
+                        cartRepository.clearTotals(Collections.singleton(cartId));
+                    } else {
+                        cartRepository.save(cart);
+                    }
+                    return Optional.ofNullable(result);
+                });
+            } catch (ConcurrencyFailureException | OptimisticLockException ex) {
+                conflicts.increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    logger.warn("Giving up on cart " + cartId + " after " + attempt + " failed attempts to lock it");
+                    throw new RetryLaterException(HttpStatus.CONFLICT, 1, "Cart was modified concurrently, please retry");
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        long bound = retryBackoffMillis << Math.min(attempt - 1, 6);
+        if (bound <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RetryLaterException(HttpStatus.CONFLICT, 1, "Cart was modified concurrently, please retry");
+        }
+    }
+
+    private Object stripeFor(long cartId) {
+        return stripes[stripeIndex(cartId)];
+    }
+
+    private int stripeIndex(long cartId) {
+        int hash = Long.hashCode(cartId);
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages through the item catalogue and keeps its version.
+ * <p>
+ * Pages are sorted by id, name or price, with the id breaking ties, and addressed either by number or, to stay
+ * stable while items are added, by an opaque cursor naming the last item of the previous page.
+ * <p>
+ * The version is the single row of {@code catalogue_version}, incremented by every transaction that creates,
+ * modifies or deletes an item, as reported by {@link ItemChangeListener}, within that transaction. It is therefore
+ * shared by every instance and survives restarts, so an unchanged version means an unchanged catalogue and a
+ * listing can be revalidated without reading it. Transactions writing items are serialised on that row.
+ * <p>
+ * {@link #getVersion} answers from memory, so revalidating a listing does not touch the database. The copy is
+ * advanced when a local write commits and re-read every {@code catalogue.version.poll-interval-ms}, so a write
+ * made by another instance is reported up to that long late. It only ever lags the row, so a listing is never
+ * tagged with a newer version than its contents.
+ */
+@Service
+public class CatalogueService {
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private ItemCatalogue itemCatalogue;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${item.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${item.max-page-size:500}")
+    private int maxPageSize;
+
+    /**
+     * The last version read or written by this instance, or {@code -1} before the first read.
+     */
+    private final AtomicLong version = new AtomicLong(-1);
+
+    public enum Sort {
+        ID, NAME, PRICE
+    }
+
+    public long getVersion() {
+        long current = version.get();
+        return current >= 0 ? current : refreshVersion();
+    }
+
+    /**
+     * Picks up versions moved by other instances.
+     *
+     * @return the version now held
+     */
+    @Scheduled(fixedDelayString = "${catalogue.version.poll-interval-ms:1000}")
+    public long refreshVersion() {
+        return advanceVersion(jdbcTemplate.queryForObject("SELECT version FROM catalogue_version WHERE id = 1",
+                Long.class));
+    }
+
+    private long advanceVersion(long committed) {
+        return version.accumulateAndGet(committed, Math::max);
+    }
+
+    /**
+     * Records a created or modified item, to be applied once the current transaction commits.
+     */
+    public void itemWritten(Item item) {
+        changed(item.getId(), item);
+    }
+
+    /**
+     * Records a deleted item, to be applied once the current transaction commits.
+     */
+    public void itemRemoved(Item item) {
+        changed(item.getId(), null);
+    }
+
+    /**
+     * Moves the version with the first change of the current transaction, collects its changes and, once it
+     * commits, applies them to the {@link ItemCatalogue} and the {@link ItemSearchIndex}. Outside a transaction
+     * they are applied at once. The version is moved through JDBC on the transaction's connection, as this runs
+     * while Hibernate flushes, and the in-memory copy follows it on commit.
+     */
+    private void changed(long id, Item item) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            long committed = incrementVersion();
+            commit(Collections.singletonMap(id, item));
+            advanceVersion(committed);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<Long, Item> pending = (Map<Long, Item>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            long written = incrementVersion();
+            Map<Long, Item> changes = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    commit(changes);
+                    advanceVersion(written);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CatalogueService.this);
+                }
+            });
+            pending = changes;
+        }
+        pending.put(id, item);
+    }
+
+    private void commit(Map<Long, Item> changes) {
+        itemCatalogue.apply(changes);
+        itemSearchIndex.apply(changes);
+    }
+
+    /**
+     * @return the new version, read back while the row is still locked by the update
+     */
+    private long incrementVersion() {
+        jdbcTemplate.update("UPDATE catalogue_version SET version = version + 1 WHERE id = 1");
+        return jdbcTemplate.queryForObject("SELECT version FROM catalogue_version WHERE id = 1", Long.class);
+    }
+
+    /**
+     * @param pageSize the requested number of items, or {@code null} for {@code item.page-size}; capped at
+     *                 {@code item.max-page-size}
+     */
+    public Page findPage(Sort sort, int pageNumber, Integer pageSize) {
+        int limit = limit(pageSize);
+        Slice<Item> slice = itemRepository.findAllBy(PageRequest.of(pageNumber, limit, springSort(sort)));
+        return new Page(slice.getContent(), limit, slice.hasNext() ? pageNumber + 1 : null, null);
+    }
+
+    /**
+     * @param after the cursor of the previous page, or {@code null} for the first page
+     * @throws IllegalArgumentException when the cursor is malformed
+     */
+    public Page findPageAfter(Sort sort, String after, Integer pageSize) {
+        int limit = limit(pageSize);
+        PageRequest request = PageRequest.of(0, limit + 1);
+        List<Item> items;
+        if (after == null) {
+            items = itemRepository.findAllBy(PageRequest.of(0, limit + 1, springSort(sort))).getContent();
+        } else {
+            String cursor = decode(after);
+            int separator = cursor.indexOf(':');
+            try {
+                long afterId = Long.parseLong(separator < 0 ? cursor : cursor.substring(0, separator));
+                if (sort == Sort.ID && separator < 0) {
+                    items = itemRepository.findAfterId(afterId, request);
+                } else if (sort == Sort.NAME && separator >= 0) {
+                    items = itemRepository.findAfterName(cursor.substring(separator + 1), afterId, request);
+                } else if (sort == Sort.PRICE && separator >= 0) {
+                    items = itemRepository.findAfterPrice(Long.parseLong(cursor.substring(separator + 1)), afterId,
+                            request);
+                } else {
+                    throw new IllegalArgumentException("Cursor does not match the sort order");
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Malformed cursor", ex);
+            }
+        }
+        boolean hasMore = items.size() > limit;
+        if (hasMore) {
+            items = items.subList(0, limit);
+        }
+        return new Page(items, limit, null, hasMore ? cursor(sort, items.get(items.size() - 1)) : null);
+    }
+
+    /**
+     * Returns one numbered page of the items matching a query, best match first, as ranked by
+     * {@link ItemSearchIndex}.
+     */
+    public Page search(String query, int pageNumber, Integer pageSize) {
+        int limit = limit(pageSize);
+        List<Item> items = itemSearchIndex.search(query, (long) pageNumber * limit, limit + 1);
+        boolean hasMore = items.size() > limit;
+        if (hasMore) {
+            items = items.subList(0, limit);
+        }
+        return new Page(items, limit, hasMore ? pageNumber + 1 : null, null);
+    }
+
+    private int limit(Integer pageSize) {
+        return pageSize == null ? defaultPageSize : Math.max(1, Math.min(pageSize, maxPageSize));
+    }
+
+    private static org.springframework.data.domain.Sort springSort(Sort sort) {
+        switch (sort) {
+            case NAME:
+                return org.springframework.data.domain.Sort.by("name", "id");
+            case PRICE:
+                return org.springframework.data.domain.Sort.by("priceMinor", "id");
+            default:
+                return org.springframework.data.domain.Sort.by("id");
+        }
+    }
+
+    private static String cursor(Sort sort, Item last) {
+        String cursor;
+        switch (sort) {
+            case NAME:
+                cursor = last.getId() + ":" + last.getName();
+                break;
+            case PRICE:
+                cursor = last.getId() + ":" + last.getPriceMinor();
+                break;
+            default:
+                cursor = String.valueOf(last.getId());
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed cursor", ex);
+        }
+    }
+
+    public static final class Page {
+        private final List<Item> items;
+
+        private final int pageSize;
+
+        private final Integer nextPage;
+
+        private final String nextCursor;
+
+        public Page(List<Item> items, int pageSize, Integer nextPage, String nextCursor) {
+            this.items = items;
+            this.pageSize = pageSize;
+            this.nextPage = nextPage;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Item> getItems() {
+            return items;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return the number of the next page of a numbered page, or {@code null} when this is the last page or
+         * the page was read with a cursor
+         */
+        public Integer getNextPage() {
+            return nextPage;
+        }
+
+        /**
+         * @return the cursor of the next page of a page read with a cursor, or {@code null} when this is the last
+         * page or the page was read by number
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
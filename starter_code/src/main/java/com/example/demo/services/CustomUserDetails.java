@@ -6,15 +6,31 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
 public class CustomUserDetails implements UserDetails {
+    public static final String ADMIN = "ADMIN";
+
+    private static final Collection<? extends GrantedAuthority> DEFAULT_AUTHORITIES =
+            Collections.singleton(new SimpleGrantedAuthority("USER"));
+
+    static final Collection<? extends GrantedAuthority> ADMIN_AUTHORITIES = Collections.unmodifiableList(
+            Arrays.asList(new SimpleGrantedAuthority("USER"), new SimpleGrantedAuthority(ADMIN)));
+
     private final User user;
 
+    private final Collection<? extends GrantedAuthority> authorities;
+
     @Autowired
     public CustomUserDetails(User user) {
+        this(user, DEFAULT_AUTHORITIES);
+    }
+
+    public CustomUserDetails(User user, Collection<? extends GrantedAuthority> authorities) {
         this.user = user;
+        this.authorities = authorities;
     }
 
     public User getUser() {
@@ -23,7 +39,7 @@ public class CustomUserDetails implements UserDetails {
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return Collections.singleton(new SimpleGrantedAuthority("USER"));
+        return authorities;
     }
 
     @Override
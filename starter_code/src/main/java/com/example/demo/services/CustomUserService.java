@@ -2,23 +2,64 @@ package com.example.demo.services;
 
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Set;
+
 @Service
-public class CustomUserService implements UserDetailsService {
+public class CustomUserService implements UserDetailsService, UserDetailsPasswordService {
+    Logger logger = LogManager.getLogger(CustomUserService.class);
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCache userCache;
+
+    /**
+     * Users granted the {@code ADMIN} authority on top of {@code USER}. The authorities are carried in the access
+     * token, so a change takes effect for a user at their next login or refresh.
+     */
+    @Value("${security.admin-usernames:}")
+    private Set<String> adminUsernames;
+
     @Override
     public UserDetails loadUserByUsername(String s) {
-        User user = userRepository.findByUsername(s);
+        UserSnapshot user = userCache.findByUsername(s);
         if (user == null) {
             throw new UsernameNotFoundException(s);
         }
+        return createUserDetails(user.toUser());
+    }
+
+    /**
+     * Called after a successful login when the stored hash no longer matches the configured encoding.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUsername(userDetails.getUsername());
+        if (user == null) {
+            throw new UsernameNotFoundException(userDetails.getUsername());
+        }
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        userCache.invalidate(user.getUsername());
+        logger.info("Password hash upgraded for user " + user.getUsername());
+        return createUserDetails(user);
+    }
+
+    public CustomUserDetails createUserDetails(User user) {
+        if (adminUsernames != null && adminUsernames.contains(user.getUsername())) {
+            return new CustomUserDetails(user, CustomUserDetails.ADMIN_AUTHORITIES);
+        }
         return new CustomUserDetails(user);
     }
 }
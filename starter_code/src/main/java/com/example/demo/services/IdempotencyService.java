@@ -0,0 +1,304 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.IdempotencyRecord;
+import com.example.demo.model.persistence.repositories.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Makes non-idempotent endpoints safe to retry: the first request with a given {@code Idempotency-Key} is
+ * executed and its successful response stored, and later requests with the same key and the same payload get
+ * that response back without executing again.
+ * <p>
+ * Responses are kept in a bounded LRU in memory ({@code idempotency.max-entries}) and in the
+ * {@code idempotency_record} table, so they survive eviction and restarts until they expire after
+ * {@code idempotency.ttl-ms}. Only 2xx responses are stored; errors had no effect and may simply be retried.
+ * A key reused with a different payload is rejected with 422, and a retry that arrives while the first request
+ * is still running gets 409 with {@code Retry-After}.
+ * <p>
+ * The response is stored right after the action returns, outside its transaction, so a crash in between lets a
+ * retry execute again. Keys that are in progress are only tracked in memory, so the guarantee holds for a
+ * single node.
+ */
+@Service
+public class IdempotencyService implements MeterBinder {
+    Logger logger = LogManager.getLogger(IdempotencyService.class);
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.ttl-ms:86400000}")
+    private long ttlMillis;
+
+    @Value("${idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${idempotency.max-key-length:255}")
+    private int maxKeyLength;
+
+    /**
+     * Completed responses, access-ordered for LRU eviction; guarded by its own monitor.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Requests still in progress, kept apart from {@link #entries} so that they are never evicted and never stand in
+     * the way of evicting completed ones; bounded by the number of concurrent requests. Guarded by the monitor of
+     * {@link #entries}.
+     */
+    private final Map<String, Entry> inProgress = new HashMap<>();
+
+    private final LongAdder executions = new LongAdder();
+
+    private final LongAdder replays = new LongAdder();
+
+    private final LongAdder conflicts = new LongAdder();
+
+    private final LongAdder mismatches = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Runs {@code action} at most once per key within {@code scope}.
+     *
+     * @param idempotencyKey the client's key, or {@code null} to simply run the action
+     * @param scope          the endpoint and user the key belongs to, so keys of different users never collide
+     * @param request        the request payload; a retry must send the same payload
+     * @param bodyType       the response body type, used to read a stored response back
+     */
+    public <T> ResponseEntity<T> execute(String idempotencyKey, String scope, Object request, Class<T> bodyType,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > maxKeyLength) {
+            return ResponseEntity.badRequest().build();
+        }
+        String keyHash = hash(scope + '\n' + idempotencyKey);
+        String requestHash = hash(scope + '\n' + toJson(request));
+        long now = System.currentTimeMillis();
+
+        Entry pending = new Entry(requestHash, 0, null, Long.MAX_VALUE, false);
+        Entry existing;
+        synchronized (entries) {
+            existing = inProgress.get(keyHash);
+            if (existing == null) {
+                existing = entries.get(keyHash);
+                if (existing != null && existing.expiresAt <= now) {
+                    entries.remove(keyHash);
+                    existing = null;
+                }
+            }
+            if (existing == null) {
+                inProgress.put(keyHash, pending);
+            }
+        }
+        if (existing != null) {
+            return replay(existing, requestHash, bodyType);
+        }
+
+        try {
+            IdempotencyRecord record = idempotencyRecordRepository.findByKeyHash(keyHash);
+            if (record != null && record.getExpiresAt() > now) {
+                Entry stored = new Entry(record.getRequestHash(), record.getStatus(),
+                        fromJson(record.getBody(), bodyType), record.getExpiresAt(), true);
+                complete(keyHash, pending, stored);
+                return replay(stored, requestHash, bodyType);
+            }
+
+            executions.increment();
+            ResponseEntity<T> response = action.get();
+            if (response.getStatusCode().is2xxSuccessful()) {
+                Entry completed = new Entry(requestHash, response.getStatusCodeValue(), response.getBody(),
+                        System.currentTimeMillis() + ttlMillis, true);
+                store(record, keyHash, completed);
+                complete(keyHash, pending, completed);
+            }
+            return response;
+        } finally {
+            synchronized (entries) {
+                inProgress.remove(keyHash, pending);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expiresAt <= now) {
+                    iterator.remove();
+                }
+            }
+        }
+        int purged = idempotencyRecordRepository.deleteExpired(now);
+        if (purged > 0) {
+            logger.info("Purged " + purged + " expired idempotency records");
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size() + inProgress.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("idempotency.executions", executions, LongAdder::sum)
+                .description("Requests with an idempotency key that were executed")
+                .register(registry);
+        FunctionCounter.builder("idempotency.replays", replays, LongAdder::sum)
+                .description("Requests answered with the stored response of an earlier request with the same key")
+                .register(registry);
+        FunctionCounter.builder("idempotency.conflicts", conflicts, LongAdder::sum)
+                .description("Requests rejected because a request with the same key was still in progress")
+                .register(registry);
+        FunctionCounter.builder("idempotency.mismatches", mismatches, LongAdder::sum)
+                .description("Requests rejected because their key was used earlier with a different payload")
+                .register(registry);
+        FunctionCounter.builder("idempotency.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("idempotency.size", this, IdempotencyService::size).register(registry);
+    }
+
+    private <T> ResponseEntity<T> replay(Entry entry, String requestHash, Class<T> bodyType) {
+        if (!entry.requestHash.equals(requestHash)) {
+            mismatches.increment();
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+        if (!entry.completed) {
+            conflicts.increment();
+            throw new RetryLaterException(HttpStatus.CONFLICT, 1,
+                    "A request with this Idempotency-Key is still in progress");
+        }
+        replays.increment();
+        return ResponseEntity.status(entry.status).header(REPLAYED_HEADER, "true").body(bodyType.cast(entry.body));
+    }
+
+    private void complete(String keyHash, Entry pending, Entry completed) {
+        synchronized (entries) {
+            if (inProgress.remove(keyHash, pending)) {
+                entries.put(keyHash, completed);
+            }
+        }
+    }
+
+    /**
+     * Writes the response to the table, reusing the row of an expired record with the same key. A failure is
+     * logged rather than failing a request whose action already ran; the response is still kept in memory.
+     */
+    private void store(IdempotencyRecord record, String keyHash, Entry entry) {
+        if (record == null) {
+            record = new IdempotencyRecord();
+            record.setKeyHash(keyHash);
+        }
+        record.setRequestHash(entry.requestHash);
+        record.setStatus(entry.status);
+        record.setBody(entry.body == null ? null : toJson(entry.body));
+        record.setExpiresAt(entry.expiresAt);
+        try {
+            idempotencyRecordRepository.save(record);
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to store idempotency record", ex);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> type) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hash(String value) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static final class Entry {
+        private final String requestHash;
+
+        private final int status;
+
+        private final Object body;
+
+        private final long expiresAt;
+
+        private final boolean completed;
+
+        private Entry(String requestHash, int status, Object body, long expiresAt, boolean completed) {
+            this.requestHash = requestHash;
+            this.status = status;
+            this.body = body;
+            this.expiresAt = expiresAt;
+            this.completed = completed;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.User;
+
+/**
+ * A freshly issued refresh token together with the identity it was issued for. The raw token is only ever held
+ * here and handed to the client; the database keeps its hash.
+ */
+public final class IssuedRefreshToken {
+    private final String token;
+
+    private final long userId;
+
+    private final String username;
+
+    public IssuedRefreshToken(String token, long userId, String username) {
+        this.token = token;
+        this.userId = userId;
+        this.username = username;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Builds a detached user carrying only the id and username, enough to mint an access token.
+     */
+    public User toUser() {
+        User user = new User();
+        user.setId(userId);
+        user.setUsername(username);
+        return user;
+    }
+}
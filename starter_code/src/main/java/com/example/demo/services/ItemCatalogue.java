@@ -0,0 +1,287 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through item lookups by id and by name, shared by the item and cart endpoints.
+ * <p>
+ * While the catalogue holds at most {@code catalogue.snapshot.max-items} items, lookups are answered from an
+ * immutable snapshot of the whole catalogue, indexed by id and by name, without touching the database. Committed
+ * item writes, as reported by {@link CatalogueService}, are applied by copying the snapshot and swapping the copy
+ * in, so readers never lock or see a half-applied change. Beyond that size only lookups by id are cached, in a
+ * bounded LRU of {@code catalogue.lru.max-size} items, and lookups by name go to the database.
+ * {@code catalogue.snapshot.enabled=false} sends every lookup to the database.
+ * <p>
+ * Returned items are shared and must not be modified.
+ */
+@Service
+public class ItemCatalogue implements MeterBinder {
+    Logger logger = LogManager.getLogger(ItemCatalogue.class);
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Value("${catalogue.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${catalogue.snapshot.max-items:100000}")
+    private int maxItems;
+
+    @Value("${catalogue.lru.max-size:10000}")
+    private int lruMaxSize;
+
+    /**
+     * {@code null} until {@link #load} has run, or once the catalogue has outgrown the snapshot.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Whether lookups by id go through {@link #lru}; set once {@link #load} has found the catalogue too large.
+     */
+    private volatile boolean lruMode;
+
+    /**
+     * Access-ordered for LRU eviction; guarded by its own monitor.
+     */
+    private final LinkedHashMap<Long, Item> lru = new LinkedHashMap<Long, Item>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Item> eldest) {
+            return size() > lruMaxSize;
+        }
+    };
+
+    /**
+     * Incremented by every applied change, so that a load that raced with a change is not installed.
+     */
+    private final AtomicLong changes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Reads the whole catalogue into a snapshot, or switches to the LRU when it is larger than
+     * {@code catalogue.snapshot.max-items}. Until it has run, every lookup goes to the database.
+     */
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        while (true) {
+            long generation = changes.get();
+            if (itemRepository.count() > maxItems) {
+                switchToLru();
+                return;
+            }
+            Snapshot loaded = Snapshot.of(itemRepository.findAll());
+            synchronized (this) {
+                if (changes.get() == generation) {
+                    snapshot = loaded;
+                    logger.info("Loaded a snapshot of " + loaded.byId.size() + " items");
+                    return;
+                }
+            }
+        }
+    }
+
+    public Optional<Item> findById(long id) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            hits.increment();
+            return Optional.ofNullable(current.byId.get(id));
+        }
+        if (!lruMode) {
+            return itemRepository.findById(id);
+        }
+        synchronized (lru) {
+            Item item = lru.get(id);
+            if (item != null) {
+                hits.increment();
+                return Optional.of(item);
+            }
+        }
+        misses.increment();
+        long generation = changes.get();
+        Optional<Item> item = itemRepository.findById(id);
+        if (item.isPresent()) {
+            Item copy = copy(item.get());
+            synchronized (lru) {
+                if (changes.get() == generation) {
+                    lru.put(id, copy);
+                }
+            }
+            return Optional.of(copy);
+        }
+        return item;
+    }
+
+    public List<Item> findByName(String name) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            hits.increment();
+            return current.byName.getOrDefault(name, Collections.emptyList());
+        }
+        if (lruMode) {
+            misses.increment();
+        }
+        return itemRepository.findByName(name);
+    }
+
+    /**
+     * Applies committed item writes: an item per written id, or {@code null} for a removed one.
+     */
+    public void apply(Map<Long, Item> written) {
+        synchronized (this) {
+            changes.incrementAndGet();
+            Snapshot current = snapshot;
+            if (current != null) {
+                Snapshot updated = current.with(written);
+                if (updated.byId.size() > maxItems) {
+                    switchToLru();
+                } else {
+                    snapshot = updated;
+                }
+            }
+        }
+        if (lruMode) {
+            synchronized (lru) {
+                lru.keySet().removeAll(written.keySet());
+            }
+        }
+    }
+
+    public int size() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current.byId.size();
+        }
+        synchronized (lru) {
+            return lru.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("item.catalogue.hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("item.catalogue.misses", misses, LongAdder::sum).register(registry);
+        Gauge.builder("item.catalogue.size", this, ItemCatalogue::size).register(registry);
+        Gauge.builder("item.catalogue.hit.ratio", this, ItemCatalogue::hitRatio).register(registry);
+    }
+
+    private double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0d : (double) hitCount / total;
+    }
+
+    private void switchToLru() {
+        logger.info("The catalogue has more than " + maxItems + " items, caching lookups by id in an LRU instead");
+        lruMode = true;
+        snapshot = null;
+    }
+
+    static Item copy(Item item) {
+        Item copy = new Item();
+        copy.setId(item.getId());
+        copy.setName(item.getName());
+        copy.setPriceMinor(item.getPriceMinor());
+        copy.setDescription(item.getDescription());
+        return copy;
+    }
+
+    private static final class Snapshot {
+        private final Map<Long, Item> byId;
+
+        private final Map<String, List<Item>> byName;
+
+        private Snapshot(Map<Long, Item> byId, Map<String, List<Item>> byName) {
+            this.byId = Collections.unmodifiableMap(byId);
+            this.byName = Collections.unmodifiableMap(byName);
+        }
+
+        private static Snapshot of(Iterable<Item> items) {
+            Map<Long, Item> byId = new HashMap<>();
+            for (Item item : items) {
+                byId.put(item.getId(), copy(item));
+            }
+            return new Snapshot(byId, indexByName(byId.values()));
+        }
+
+        /**
+         * @return a copy of this snapshot with the written items replaced and the removed ones dropped; only the
+         * names of written items, before and after the write, are indexed again
+         */
+        private Snapshot with(Map<Long, Item> written) {
+            Map<Long, Item> byId = new HashMap<>(this.byId);
+            Map<String, List<Item>> renamed = new HashMap<>();
+            for (Map.Entry<Long, Item> entry : written.entrySet()) {
+                Item old;
+                if (entry.getValue() == null) {
+                    old = byId.remove(entry.getKey());
+                } else {
+                    Item item = copy(entry.getValue());
+                    old = byId.put(entry.getKey(), item);
+                    renamed.computeIfAbsent(item.getName(), name -> new ArrayList<>(1)).add(item);
+                }
+                if (old != null) {
+                    renamed.computeIfAbsent(old.getName(), name -> new ArrayList<>(1));
+                }
+            }
+
+            Map<String, List<Item>> byName = new HashMap<>(this.byName);
+            for (Map.Entry<String, List<Item>> entry : renamed.entrySet()) {
+                List<Item> named = entry.getValue();
+                for (Item item : this.byName.getOrDefault(entry.getKey(), Collections.emptyList())) {
+                    if (!written.containsKey(item.getId())) {
+                        named.add(item);
+                    }
+                }
+                if (named.isEmpty()) {
+                    byName.remove(entry.getKey());
+                } else {
+                    byName.put(entry.getKey(), inIdOrder(named));
+                }
+            }
+            return new Snapshot(byId, byName);
+        }
+
+        private static Map<String, List<Item>> indexByName(Iterable<Item> items) {
+            Map<String, List<Item>> byName = new HashMap<>();
+            for (Item item : items) {
+                byName.computeIfAbsent(item.getName(), name -> new ArrayList<>(1)).add(item);
+            }
+            for (Map.Entry<String, List<Item>> entry : byName.entrySet()) {
+                entry.setValue(inIdOrder(entry.getValue()));
+            }
+            return byName;
+        }
+
+        /**
+         * Items of the same name are listed in id order, as the database returns them.
+         */
+        private static List<Item> inIdOrder(List<Item> named) {
+            named.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+            return Collections.unmodifiableList(named);
+        }
+    }
+}
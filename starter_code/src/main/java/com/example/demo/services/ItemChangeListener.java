@@ -0,0 +1,32 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Item;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Tells the {@link CatalogueService} about every item written through JPA, so that the catalogue version and
+ * the {@link ItemCatalogue} follow every change, whichever code path made it. Created by Hibernate through
+ * {@link com.example.demo.configuration.HibernateConfig}; the service is injected lazily as it depends on the
+ * entity manager factory that creates the listener.
+ */
+public class ItemChangeListener {
+    @Autowired
+    @Lazy
+    private CatalogueService catalogueService;
+
+    @PostPersist
+    @PostUpdate
+    public void itemWritten(Item item) {
+        catalogueService.itemWritten(item);
+    }
+
+    @PostRemove
+    public void itemRemoved(Item item) {
+        catalogueService.itemRemoved(item);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throttles login attempts per client IP and per username before any password hash is computed, so that
+ * credential-stuffing traffic is rejected for the cost of a map lookup.
+ */
+@Component
+public class LoginRateLimiter implements MeterBinder {
+    @Value("${security.login-rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.login-rate-limit.per-user.capacity:5}")
+    private int userCapacity;
+
+    @Value("${security.login-rate-limit.per-user.refill-per-minute:5}")
+    private int userRefillPerMinute;
+
+    @Value("${security.login-rate-limit.per-ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${security.login-rate-limit.per-ip.refill-per-minute:20}")
+    private int ipRefillPerMinute;
+
+    @Value("${security.login-rate-limit.max-buckets:100000}")
+    private int maxBuckets;
+
+    @Value("${security.login-rate-limit.stripes:64}")
+    private int stripes;
+
+    private final LongAdder userRejections = new LongAdder();
+
+    private final LongAdder ipRejections = new LongAdder();
+
+    private TokenBucketLimiter userLimiter;
+
+    private TokenBucketLimiter ipLimiter;
+
+    @PostConstruct
+    public void start() {
+        userLimiter = new TokenBucketLimiter(userCapacity, userRefillPerMinute, maxBuckets, stripes);
+        ipLimiter = new TokenBucketLimiter(ipCapacity, ipRefillPerMinute, maxBuckets, stripes);
+    }
+
+    /**
+     * Consumes one attempt for the client IP and then for the username.
+     *
+     * @throws RetryLaterException with status 429 when either limit is exhausted
+     */
+    public void acquire(String username, String clientIp) {
+        if (!enabled) {
+            return;
+        }
+        check(ipLimiter.tryAcquire(clientIp == null ? "" : clientIp), ipRejections);
+        check(userLimiter.tryAcquire(username == null ? "" : username.toLowerCase(Locale.ROOT)), userRejections);
+    }
+
+    @Scheduled(fixedDelayString = "${security.login-rate-limit.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        if (userLimiter != null) {
+            userLimiter.evictIdle();
+            ipLimiter.evictIdle();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registerRejections(registry, "user", userRejections);
+        registerRejections(registry, "ip", ipRejections);
+        Gauge.builder("login.rate_limit.buckets", this, limiter -> limiter.userLimiter.size() + limiter.ipLimiter.size())
+                .register(registry);
+        FunctionCounter.builder("login.rate_limit.evictions", this,
+                limiter -> limiter.userLimiter.evictions() + limiter.ipLimiter.evictions())
+                .register(registry);
+    }
+
+    private void check(long result, LongAdder rejections) {
+        if (result == TokenBucketLimiter.GRANTED) {
+            return;
+        }
+        rejections.increment();
+        long retryAfterSeconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(result + TimeUnit.SECONDS.toNanos(1) - 1));
+        throw new RetryLaterException(HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds, "Too many login attempts, please retry later");
+    }
+
+    private static void registerRejections(MeterRegistry registry, String reason, LongAdder rejections) {
+        FunctionCounter.builder("login.rate_limit.rejections", rejections, LongAdder::sum)
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
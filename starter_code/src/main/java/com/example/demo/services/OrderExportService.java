@@ -0,0 +1,140 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.responses.OrderExportRecord;
+import com.example.demo.model.responses.OrderLineResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports orders as newline-delimited JSON, one {@link OrderExportRecord} per line, for reporting jobs.
+ * <p>
+ * The orders and their lines are read with a single query through a forward-only cursor that fetches
+ * {@code order.export.fetch-size} rows at a time, in order id order, and each order is written as soon as its last
+ * line has been read. The rows are scalar projections, so no entities are managed; the session is still cleared
+ * and the output flushed every {@code order.export.fetch-size} orders, so neither grows with the number of orders
+ * exported.
+ */
+@Service
+public class OrderExportService {
+    Logger logger = LogManager.getLogger(OrderExportService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${order.export.fetch-size:500}")
+    private int fetchSize;
+
+    /**
+     * Writes the matching orders to {@code out}, oldest first. Every bound is optional; lower bounds are inclusive
+     * and upper bounds exclusive. Orders without a creation time never match a time bound.
+     *
+     * @param fromId      the smallest order id to export
+     * @param toId        the order id to stop before
+     * @param createdFrom the earliest creation time to export, in epoch milliseconds
+     * @param createdTo   the creation time to stop before, in epoch milliseconds
+     * @param gzip        whether to gzip-compress the output
+     * @return the number of orders written
+     */
+    @Transactional(readOnly = true)
+    public long export(Long fromId, Long toId, Long createdFrom, Long createdTo, boolean gzip, OutputStream out)
+            throws IOException {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        StringBuilder hql = new StringBuilder("select o.id, o.user.id, o.createdAt, o.totalMinor, l.itemId, l.name, "
+                + "l.unitPriceMinor, l.quantity from UserOrder o left join o.lines l where 1 = 1");
+        if (fromId != null) {
+            hql.append(" and o.id >= :fromId");
+            parameters.put("fromId", fromId);
+        }
+        if (toId != null) {
+            hql.append(" and o.id < :toId");
+            parameters.put("toId", toId);
+        }
+        if (createdFrom != null) {
+            hql.append(" and o.createdAt >= :createdFrom");
+            parameters.put("createdFrom", createdFrom);
+        }
+        if (createdTo != null) {
+            hql.append(" and o.createdAt < :createdTo");
+            parameters.put("createdTo", createdTo);
+        }
+        hql.append(" order by o.id, l.id");
+
+        Session session = entityManager.unwrap(Session.class);
+        Query<Object[]> query = session.createQuery(hql.toString(), Object[].class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheable(false);
+        parameters.forEach(query::setParameter);
+
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, 8192) : null;
+        ObjectWriter writer = objectMapper.writerFor(OrderExportRecord.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long exported = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(gzip ? compressed : out);
+             ScrollableResults rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            OrderExportRecord current = null;
+            while (rows.next()) {
+                Object[] row = rows.get();
+                long orderId = (Long) row[0];
+                if (current == null || current.getId() != orderId) {
+                    if (current != null) {
+                        write(writer, generator, current);
+                        if (++exported % fetchSize == 0) {
+                            session.clear();
+                            generator.flush();
+                        }
+                    }
+                    current = new OrderExportRecord(orderId, (Long) row[1], (Long) row[2],
+                            Money.toDecimal((Long) row[3]), new ArrayList<>());
+                }
+                if (row[4] != null) {
+                    current.getLines().add(new OrderLineResponse((Long) row[4], (String) row[5], (Integer) row[7],
+                            Money.toDecimal((Long) row[6])));
+                }
+            }
+            if (current != null) {
+                write(writer, generator, current);
+                exported++;
+            }
+            generator.flush();
+        }
+        if (compressed != null) {
+            compressed.finish();
+        }
+        out.flush();
+        logger.info("Exported " + exported + " orders");
+        return exported;
+    }
+
+    private void write(ObjectWriter writer, JsonGenerator generator, OrderExportRecord record) throws IOException {
+        writer.writeValue(generator, record);
+        generator.writeRaw('\n');
+    }
+}
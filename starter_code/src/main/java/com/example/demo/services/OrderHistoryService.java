@@ -0,0 +1,111 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a user's order history in keyset pages ordered by order id, so that no request holds more than one page
+ * of orders in memory however long the history is. A page is addressed by the id of the last order of the
+ * previous page, which stays valid while new orders are placed, unlike an offset.
+ */
+@Service
+public class OrderHistoryService {
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${order.history.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${order.history.max-page-size:500}")
+    private int maxPageSize;
+
+    /**
+     * @param afterId  the id of the last order of the previous page, or {@code 0} for the first page
+     * @param pageSize the requested number of orders, or {@code null} for {@code order.history.page-size};
+     *                 capped at {@code order.history.max-page-size}
+     */
+    public Page findPage(long userId, long afterId, Integer pageSize) {
+        int limit = pageSize == null ? defaultPageSize : Math.max(1, Math.min(pageSize, maxPageSize));
+        List<Long> ids = orderRepository.findIdsByUserIdAfter(userId, afterId, PageRequest.of(0, limit + 1));
+        boolean hasMore = ids.size() > limit;
+        if (hasMore) {
+            ids = ids.subList(0, limit);
+        }
+        if (ids.isEmpty()) {
+            return new Page(Collections.emptyList(), limit, null);
+        }
+        List<OrderResponse> orders = OrderResponse.fromRows(orderRepository.findLinesByOrderIds(ids));
+        return new Page(orders, limit, hasMore ? ids.get(ids.size() - 1) : null);
+    }
+
+    /**
+     * Writes the user's whole order history to {@code out} as a JSON array, one page at a time, flushing after
+     * each page. Orders placed while the history is being written are included if their page has not been read
+     * yet.
+     */
+    public void writeAll(long userId, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(OrderResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            Page page = findPage(userId, 0, maxPageSize);
+            while (true) {
+                for (OrderResponse order : page.getOrders()) {
+                    writer.writeValue(generator, order);
+                }
+                generator.flush();
+                if (page.getNextAfterId() == null) {
+                    break;
+                }
+                page = findPage(userId, page.getNextAfterId(), maxPageSize);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    public static final class Page {
+        private final List<OrderResponse> orders;
+
+        private final int pageSize;
+
+        private final Long nextAfterId;
+
+        public Page(List<OrderResponse> orders, int pageSize, Long nextAfterId) {
+            this.orders = orders;
+            this.pageSize = pageSize;
+            this.nextAfterId = nextAfterId;
+        }
+
+        public List<OrderResponse> getOrders() {
+            return orders;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return the cursor of the next page, or {@code null} when this is the last page
+         */
+        public Long getNextAfterId() {
+            return nextAfterId;
+        }
+    }
+}
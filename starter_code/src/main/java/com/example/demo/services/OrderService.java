@@ -0,0 +1,73 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderResponse;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Creates orders from carts, for both the synchronous and the asynchronous submission paths.
+ */
+@Service
+public class OrderService {
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Draws an order id from the pool that saved orders take theirs from, so that it can be handed out before the
+     * order exists. Reads the sequence once per pool of ids, outside of any transaction.
+     */
+    public long reserveOrderId() {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        IdentifierGenerator generator = sessionFactory.getMetamodel().entityPersister(UserOrder.class)
+                .getIdentifierGenerator();
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            return (Long) generator.generate((SharedSessionContractImplementor) session, null);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Saves an order of the cart's contents, adds it to the user's order summary and, once committed, to the sales
+     * analytics. Runs in the caller's transaction, normally that of {@link CartService#checkout}, so the order, the
+     * summary and the emptied cart are committed together.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public OrderResponse placeOrder(Cart cart) {
+        return placeOrder(cart, null);
+    }
+
+    /**
+     * Like {@link #placeOrder(Cart)}, the order taking the id reserved by {@link #reserveOrderId} when there is one.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public OrderResponse placeOrder(Cart cart, Long reservedId) {
+        UserOrder order = UserOrder.createFromCart(cart);
+        order.setReservedId(reservedId);
+        UserOrder created = orderRepository.save(order);
+        orderSummaryService.recordOrder(created);
+        salesAnalyticsService.recordOrder(created);
+        return OrderResponse.of(created.getId(), cart);
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.model.responses.OrderStatusResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional asynchronous order submission, enabled with {@code order.async.enabled}.
+ * <p>
+ * Submissions are put on a bounded queue ({@code order.async.queue-capacity}) and answered at once with the id
+ * that the order will be created with, reserved from the order id pool through {@link OrderService#reserveOrderId}.
+ * {@code order.async.writer-threads} writers take whatever has queued up, up to
+ * {@code order.async.max-batch-size} submissions, and check out all their carts in a single transaction through
+ * {@link CartService#checkoutAll}, so a burst of orders costs one commit per batch instead of one per order. When
+ * a group commit fails, for instance because one of the carts was modified concurrently, its submissions are
+ * retried one at a time through {@link CartService#checkout}, so one bad cart cannot fail the others. A full queue
+ * is reported to the caller, which then submits synchronously.
+ * <p>
+ * A submission orders the cart as it was when the submission was accepted. Its contents are recorded then and
+ * compared when the writer checks the cart out; if the cart was changed in between, for instance by adding an item
+ * after the 202, the submission fails and the cart is left as it is, so the user can review it and submit again.
+ * <p>
+ * The outcome of each submission is kept in memory for {@code order.async.status-ttl-ms} after it completes, and a
+ * submission that fails leaves its order id unused. Submissions accepted before a graceful shutdown are all
+ * committed, as accepting one and stopping exclude each other; on a crash queued submissions are lost along with
+ * their statuses, but as their carts have not been touched the user can simply submit again.
+ */
+@Service
+public class OrderSubmissionPipeline implements MeterBinder {
+    Logger logger = LogManager.getLogger(OrderSubmissionPipeline.class);
+
+    public static final String CART_CHANGED = "Cart changed after the order was submitted";
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Value("${order.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${order.async.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${order.async.writer-threads:2}")
+    private int writerThreads;
+
+    @Value("${order.async.max-batch-size:50}")
+    private int maxBatchSize;
+
+    @Value("${order.async.status-ttl-ms:600000}")
+    private long statusTtlMillis;
+
+    private BlockingQueue<Submission> queue;
+
+    private final List<Thread> writers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    /**
+     * Held for reading while a submission is accepted and for writing while stopping, so that nothing is queued
+     * after the writers have been told to stop.
+     */
+    private final ReadWriteLock stopLock = new ReentrantReadWriteLock();
+
+    private final Map<Long, Submission> submissions = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    private final LongAdder groupFailures = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile DistributionSummary batchSizes;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("order-writer-");
+        threadFactory.setDaemon(true);
+        for (int i = 0; i < Math.max(1, writerThreads); i++) {
+            Thread writer = threadFactory.newThread(this::runWriter);
+            writers.add(writer);
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops accepting submissions and waits for the writers to commit everything already queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        stopLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stopLock.writeLock().unlock();
+        }
+        for (Thread writer : writers) {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        List<Submission> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (Submission submission : rest) {
+            commitOne(submission);
+        }
+    }
+
+    /**
+     * Queues the checkout of the user's cart with its current contents.
+     *
+     * @return the status of the queued submission, or empty when the pipeline is disabled, its queue is full or
+     * the cart does not exist
+     */
+    public Optional<OrderStatusResponse> enqueue(String username, long cartId) {
+        if (!running) {
+            return Optional.empty();
+        }
+        Optional<Cart> contents = cartService.read(cartId, Cart::copy);
+        if (!contents.isPresent()) {
+            return Optional.empty();
+        }
+        Submission submission = new Submission(orderService.reserveOrderId(), username, cartId, contents.get());
+        stopLock.readLock().lock();
+        try {
+            if (!running) {
+                return Optional.empty();
+            }
+            submissions.put(submission.orderId, submission);
+            if (!queue.offer(submission)) {
+                submissions.remove(submission.orderId);
+                fallbacks.increment();
+                return Optional.empty();
+            }
+        } finally {
+            stopLock.readLock().unlock();
+        }
+        accepted.increment();
+        return Optional.of(submission.toResponse());
+    }
+
+    /**
+     * Records an order that was submitted synchronously instead, so that its status can be polled like any other.
+     */
+    public OrderStatusResponse completed(String username, long cartId, OrderResponse order) {
+        Submission submission = new Submission(order.getId(), username, cartId, null);
+        submission.complete(OrderStatusResponse.Status.COMPLETED, order, null);
+        submissions.put(submission.orderId, submission);
+        return submission.toResponse();
+    }
+
+    /**
+     * @return the status of the user's submission, or {@code null} when the order id is unknown, expired or
+     * belongs to another user
+     */
+    public OrderStatusResponse getStatus(String username, long orderId) {
+        Submission submission = submissions.get(orderId);
+        if (submission == null || !submission.username.equals(username)) {
+            return null;
+        }
+        return submission.toResponse();
+    }
+
+    @Scheduled(fixedDelayString = "${order.async.status-purge-interval-ms:60000}")
+    public void purgeCompleted() {
+        long now = System.currentTimeMillis();
+        Iterator<Submission> iterator = submissions.values().iterator();
+        while (iterator.hasNext()) {
+            Submission submission = iterator.next();
+            if (submission.completedAt != 0 && now - submission.completedAt >= statusTtlMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("order.pipeline.queue.size", this, pipeline -> pipeline.queue == null ? 0 : pipeline.queue.size())
+                .description("Order submissions waiting for a writer")
+                .register(registry);
+        batchSizes = DistributionSummary.builder("order.pipeline.commit.batch_size")
+                .description("Orders committed per transaction by the writers")
+                .register(registry);
+        FunctionCounter.builder("order.pipeline.accepted", accepted, LongAdder::sum)
+                .description("Order submissions queued")
+                .register(registry);
+        FunctionCounter.builder("order.pipeline.fallbacks", fallbacks, LongAdder::sum)
+                .description("Order submissions run synchronously because the queue was full")
+                .register(registry);
+        FunctionCounter.builder("order.pipeline.group_failures", groupFailures, LongAdder::sum)
+                .description("Group commits rolled back and retried one order at a time")
+                .register(registry);
+        FunctionCounter.builder("order.pipeline.failures", failures, LongAdder::sum)
+                .description("Queued order submissions that failed")
+                .register(registry);
+    }
+
+    private void runWriter() {
+        List<Submission> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                commit(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                logger.error("Order writer failed to process " + batch.size() + " submissions", ex);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Commits the batch as one group. A cart submitted more than once within the batch is only part of the group
+     * with its first submission; the others follow one at a time, just as they would have been processed
+     * sequentially.
+     */
+    private void commit(List<Submission> batch) {
+        Map<Long, Submission> group = new LinkedHashMap<>();
+        List<Submission> repeats = new ArrayList<>();
+        for (Submission submission : batch) {
+            if (group.putIfAbsent(submission.cartId, submission) != null) {
+                repeats.add(submission);
+            }
+        }
+        try {
+            Set<Long> changed = new HashSet<>();
+            Map<Long, OrderResponse> orders = cartService.checkoutAll(group.keySet(), cart -> {
+                Submission submission = group.get(cart.getId());
+                if (!cart.hasSameContents(submission.contents)) {
+                    changed.add(cart.getId());
+                    return null;
+                }
+                return orderService.placeOrder(cart, submission.orderId);
+            });
+            recordBatchSize(orders.size());
+            for (Submission submission : group.values()) {
+                if (orders.containsKey(submission.cartId)) {
+                    submission.complete(OrderStatusResponse.Status.COMPLETED, orders.get(submission.cartId), null);
+                } else {
+                    fail(submission, changed.contains(submission.cartId) ? CART_CHANGED : "Cart not found");
+                }
+            }
+        } catch (RuntimeException ex) {
+            groupFailures.increment();
+            logger.warn("Group commit of " + group.size() + " orders failed, committing them one at a time", ex);
+            repeats.addAll(0, group.values());
+        }
+        for (Submission submission : repeats) {
+            commitOne(submission);
+        }
+    }
+
+    private void commitOne(Submission submission) {
+        try {
+            AtomicBoolean changed = new AtomicBoolean();
+            Optional<OrderResponse> order = cartService.checkout(submission.cartId, cart -> {
+                changed.set(!cart.hasSameContents(submission.contents));
+                return changed.get() ? null : orderService.placeOrder(cart, submission.orderId);
+            });
+            if (order.isPresent()) {
+                recordBatchSize(1);
+                submission.complete(OrderStatusResponse.Status.COMPLETED, order.get(), null);
+            } else {
+                fail(submission, changed.get() ? CART_CHANGED : "Cart not found");
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Order submission " + submission.orderId + " failed", ex);
+            fail(submission, ex.getMessage());
+        }
+    }
+
+    private void fail(Submission submission, String error) {
+        failures.increment();
+        submission.complete(OrderStatusResponse.Status.FAILED, null, error);
+    }
+
+    private void recordBatchSize(int size) {
+        DistributionSummary summary = batchSizes;
+        if (summary != null) {
+            summary.record(size);
+        }
+    }
+
+    private static final class Submission {
+        private final long orderId;
+
+        private final String username;
+
+        private final long cartId;
+
+        /**
+         * The cart as it was when the submission was accepted, or {@code null} for an order submitted synchronously.
+         */
+        private final Cart contents;
+
+        /**
+         * Written after the outcome, so a reader that sees the final status also sees the order or the error.
+         */
+        private volatile OrderStatusResponse.Status status = OrderStatusResponse.Status.QUEUED;
+
+        private volatile OrderResponse order;
+
+        private volatile String error;
+
+        private volatile long completedAt;
+
+        private Submission(long orderId, String username, long cartId, Cart contents) {
+            this.orderId = orderId;
+            this.username = username;
+            this.cartId = cartId;
+            this.contents = contents;
+        }
+
+        private void complete(OrderStatusResponse.Status status, OrderResponse order, String error) {
+            this.order = order;
+            this.error = error;
+            this.completedAt = System.currentTimeMillis();
+            this.status = status;
+        }
+
+        private OrderStatusResponse toResponse() {
+            OrderStatusResponse.Status current = status;
+            return new OrderStatusResponse(orderId, current, order, error);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderSummary;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserOrderSummaryRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+/**
+ * Maintains the per-user {@link UserOrderSummary} rows: incrementally as orders are placed, and by recomputing
+ * them from {@code user_order} with {@link #rebuild} to backfill or repair them.
+ */
+@Service
+public class OrderSummaryService {
+    Logger logger = LogManager.getLogger(OrderSummaryService.class);
+
+    @Autowired
+    private UserOrderSummaryRepository userOrderSummaryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${order.summary.rebuild-batch-size:500}")
+    private int rebuildBatchSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Adds a newly placed order to its user's summary, in the transaction that places it. The order's cart is
+     * locked by that transaction, which serialises the updates of one user's summary.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordOrder(UserOrder order) {
+        long userId = order.getUser().getId();
+        if (userOrderSummaryRepository.addOrder(userId, order.getTotalMinor(), order.getCreatedAt()) == 0) {
+            entityManager.persist(new UserOrderSummary(userId, 1, order.getTotalMinor(), order.getCreatedAt()));
+        }
+    }
+
+    /**
+     * @return the user's summary, with zero orders when the user has never ordered
+     */
+    public UserOrderSummary findByUserId(long userId) {
+        return userOrderSummaryRepository.findById(userId).orElseGet(() -> new UserOrderSummary(userId, 0, 0, null));
+    }
+
+    /**
+     * Recomputes every user's summary from their orders, {@code order.summary.rebuild-batch-size} users per
+     * transaction. The carts of a batch's users are locked before their orders are read, so an order being placed
+     * concurrently is either committed and counted by the rebuild, or waits for it and is then added to the
+     * rebuilt summary; the rebuild may therefore run while orders are being placed.
+     *
+     * @return the number of users processed
+     */
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        int users = 0;
+        long afterId = 0;
+        while (true) {
+            List<Long> userIds = userRepository.findIdsAfter(afterId, PageRequest.of(0, rebuildBatchSize));
+            if (userIds.isEmpty()) {
+                break;
+            }
+            transactionTemplate.execute(status -> {
+                cartRepository.lockByUserIds(userIds);
+                userOrderSummaryRepository.deleteByUserIds(userIds);
+                for (UserOrderSummary summary : orderRepository.summarizeByUserIds(userIds)) {
+                    entityManager.persist(summary);
+                }
+                return null;
+            });
+            users += userIds.size();
+            afterId = userIds.get(userIds.size() - 1);
+        }
+        logger.info("Rebuilt the order summaries of " + users + " users in " + (System.currentTimeMillis() - start) + " ms");
+        return users;
+    }
+}
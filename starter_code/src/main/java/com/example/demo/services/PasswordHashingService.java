@@ -0,0 +1,104 @@
+package com.example.demo.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing and verification on a dedicated, size-bounded worker pool so that bursts of logins cannot
+ * exhaust the servlet request threads. When the queue is full work is rejected immediately with a
+ * {@link RetryLaterException} instead of waiting for a worker.
+ */
+@Service
+public class PasswordHashingService implements MeterBinder {
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    /**
+     * Lazy because the meter registry initialises this binder early, possibly while the security configuration
+     * that builds the manager is still being created.
+     */
+    @Lazy
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Value("${security.password-hashing.threads:0}")
+    private int threads;
+
+    @Value("${security.password-hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${security.password-hashing.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
+    private final LongAdder rejections = new LongAdder();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hashing-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    public CompletableFuture<String> encode(CharSequence rawPassword) {
+        return submit(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Runs {@link AuthenticationManager#authenticate} on the hashing pool; authentication failures complete the
+     * returned future exceptionally.
+     */
+    public CompletableFuture<Authentication> authenticate(Authentication authentication) {
+        return submit(() -> authenticationManager.authenticate(authentication));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("password.hashing.queue.size", this, service -> service.executor.getQueue().size())
+                .register(registry);
+        Gauge.builder("password.hashing.active", this, service -> service.executor.getActiveCount())
+                .register(registry);
+        FunctionCounter.builder("password.hashing.rejections", rejections, LongAdder::sum)
+                .description("Hashing requests shed because the worker queue was full")
+                .register(registry);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException ex) {
+            rejections.increment();
+            throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Too many concurrent password operations, please retry later");
+        }
+    }
+}
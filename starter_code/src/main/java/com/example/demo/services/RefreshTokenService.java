@@ -0,0 +1,155 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.RefreshToken;
+import com.example.demo.model.persistence.repositories.RefreshTokenRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Issues, rotates and revokes refresh tokens so clients can renew their short-lived access token without
+ * sending the password, and therefore without a BCrypt verification.
+ * <p>
+ * Tokens are random 256-bit values stored only as a SHA-256 hash. Each refresh revokes the presented token and
+ * issues a new one in the same family; presenting an already revoked token is treated as theft and revokes the
+ * whole family.
+ */
+@Service
+public class RefreshTokenService implements MeterBinder {
+    Logger logger = LogManager.getLogger(RefreshTokenService.class);
+
+    private static final int TOKEN_BYTES = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Value("${security.refresh-token.ttl-ms:1209600000}")
+    private long ttlMillis;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder rotations = new LongAdder();
+
+    private final LongAdder rejections = new LongAdder();
+
+    private final LongAdder reuseDetections = new LongAdder();
+
+    @Transactional
+    public IssuedRefreshToken issue(long userId, String username) {
+        return issue(UUID.randomUUID().toString(), userId, username);
+    }
+
+    /**
+     * Exchanges a refresh token for a new one.
+     *
+     * @return the new token, or {@code null} when the presented token is unknown, expired or revoked
+     */
+    @Transactional
+    public IssuedRefreshToken rotate(String rawToken) {
+        RefreshToken current = find(rawToken);
+        if (current == null || current.getExpiresAt() <= System.currentTimeMillis()) {
+            rejections.increment();
+            return null;
+        }
+        if (current.isRevoked() || refreshTokenRepository.revokeIfActive(current.getId()) == 0) {
+            reuseDetections.increment();
+            rejections.increment();
+            refreshTokenRepository.revokeFamily(current.getFamilyId());
+            logger.warn("Refresh token reuse detected for user " + current.getUsername() + ", revoking token family");
+            return null;
+        }
+        rotations.increment();
+        return issue(current.getFamilyId(), current.getUserId(), current.getUsername());
+    }
+
+    /**
+     * Revokes the token and every token rotated from the same login.
+     *
+     * @return {@code true} when the token was known
+     */
+    @Transactional
+    public boolean revoke(String rawToken) {
+        RefreshToken current = find(rawToken);
+        if (current == null) {
+            return false;
+        }
+        refreshTokenRepository.revokeFamily(current.getFamilyId());
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${security.refresh-token.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = refreshTokenRepository.deleteExpired(System.currentTimeMillis());
+        if (purged > 0) {
+            logger.info("Purged " + purged + " expired refresh tokens");
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("refresh.token.rotations", rotations, LongAdder::sum)
+                .description("Refresh tokens exchanged for a new access token")
+                .register(registry);
+        FunctionCounter.builder("refresh.token.rejections", rejections, LongAdder::sum)
+                .description("Refresh attempts with an unknown, expired or revoked token")
+                .register(registry);
+        FunctionCounter.builder("refresh.token.reuse", reuseDetections, LongAdder::sum)
+                .description("Revoked refresh tokens presented again, causing the token family to be revoked")
+                .register(registry);
+    }
+
+    private IssuedRefreshToken issue(String familyId, long userId, String username) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken refreshToken = new RefreshToken();
+        refreshToken.setTokenHash(hash(rawToken));
+        refreshToken.setFamilyId(familyId);
+        refreshToken.setUserId(userId);
+        refreshToken.setUsername(username);
+        refreshToken.setExpiresAt(System.currentTimeMillis() + ttlMillis);
+        refreshTokenRepository.save(refreshToken);
+        return new IssuedRefreshToken(rawToken, userId, username);
+    }
+
+    private RefreshToken find(String rawToken) {
+        if (rawToken == null || rawToken.isEmpty()) {
+            return null;
+        }
+        return refreshTokenRepository.findByTokenHash(hash(rawToken));
+    }
+
+    private static String hash(String rawToken) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(rawToken.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.demo.services;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Signals that a request was shed before doing any expensive work and may be retried after a delay.
+ */
+public class RetryLaterException extends RuntimeException {
+    private final HttpStatus status;
+
+    private final long retryAfterSeconds;
+
+    public RetryLaterException(HttpStatus status, long retryAfterSeconds, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.ItemSaleView;
+import com.example.demo.model.persistence.repositories.ItemSalesTotalView;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.ItemSalesResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps units sold and revenue per item in memory, so that the best-selling items can be ranked without grouping
+ * the order lines in the database.
+ * <p>
+ * Every committed order adds its lines to lifetime totals and to per-minute and per-hour buckets, kept in rings of
+ * {@code analytics.sales.minutes-retained} and {@code analytics.sales.hours-retained} slots that are reused as
+ * time moves on. Counters are {@link LongAdder}s in concurrent maps keyed by item id, so recording never locks.
+ * A ranking only reads the buckets of its window, so its cost depends on the number of items sold in the window
+ * and not on the number of orders.
+ * <p>
+ * The counters are lost on restart and rebuilt from {@code user_order} and {@code order_line} by {@link #rebuild}
+ * at startup. Orders committed while the rebuild runs are recorded in the rebuilt counters as well; one committed
+ * in the instant before the lifetime totals are read may be counted twice in them.
+ */
+@Service
+public class SalesAnalyticsService {
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    Logger logger = LogManager.getLogger(SalesAnalyticsService.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ItemCatalogue itemCatalogue;
+
+    @Value("${analytics.sales.minutes-retained:60}")
+    private int minutesRetained;
+
+    @Value("${analytics.sales.hours-retained:48}")
+    private int hoursRetained;
+
+    @Value("${analytics.sales.rebuild-batch-size:500}")
+    private int rebuildBatchSize;
+
+    @Value("${analytics.sales.max-top:100}")
+    private int maxTop;
+
+    private volatile Counters counters;
+
+    private volatile Rebuild rebuilding;
+
+    public enum Metric {
+        UNITS, REVENUE
+    }
+
+    @PostConstruct
+    public void init() {
+        counters = new Counters(minutesRetained, hoursRetained);
+    }
+
+    /**
+     * Adds a newly placed order to the counters once the transaction that places it has committed, so that
+     * rolled back orders are never counted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordOrder(UserOrder order) {
+        long orderId = order.getId();
+        Long createdAt = order.getCreatedAt();
+        List<OrderLine> lines = order.getLines();
+        long[] itemIds = new long[lines.size()];
+        int[] quantities = new int[lines.size()];
+        long[] revenues = new long[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            itemIds[i] = line.getItemId();
+            quantities[i] = line.getQuantity();
+            revenues[i] = Money.times(line.getUnitPriceMinor(), line.getQuantity());
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                record(orderId, createdAt, itemIds, quantities, revenues);
+            }
+        });
+    }
+
+    /**
+     * Ranks the items sold within the last {@code minutes}, or ever when {@code minutes} is {@code null}. Windows
+     * up to {@code analytics.sales.minutes-retained} minutes are counted by the minute; longer ones by the hour,
+     * that is from the start of the hour the window starts in. Item names are read from the {@link ItemCatalogue},
+     * so a ranking does not query the database; an item removed since it was sold has no name.
+     *
+     * @param limit the number of items to return, capped at {@code analytics.sales.max-top}
+     * @throws IllegalArgumentException when the window is not positive or longer than the retained hours
+     */
+    public List<ItemSalesResponse> topItems(int limit, Integer minutes, Metric metric) {
+        int n = Math.max(1, Math.min(limit, maxTop));
+        Counters current = counters;
+        Map<Long, long[]> sales;
+        if (minutes == null) {
+            sales = sum(Collections.singletonList(current.totals));
+        } else if (minutes <= 0) {
+            throw new IllegalArgumentException("The window must be at least one minute");
+        } else if (minutes <= minutesRetained) {
+            long now = System.currentTimeMillis() / MINUTE_MILLIS;
+            sales = sum(current.minutes.bucketsSince(now - minutes + 1));
+        } else if (minutes <= (long) hoursRetained * 60) {
+            long now = System.currentTimeMillis() / HOUR_MILLIS;
+            sales = sum(current.hours.bucketsSince(now - (minutes + 59) / 60 + 1));
+        } else {
+            throw new IllegalArgumentException("Sales are only kept for " + hoursRetained + " hours");
+        }
+
+        int index = metric == Metric.UNITS ? 0 : 1;
+        PriorityQueue<Map.Entry<Long, long[]>> top = new PriorityQueue<>(n + 1,
+                (a, b) -> a.getValue()[index] != b.getValue()[index]
+                        ? Long.compare(a.getValue()[index], b.getValue()[index])
+                        : Long.compare(b.getKey(), a.getKey()));
+        for (Map.Entry<Long, long[]> entry : sales.entrySet()) {
+            top.offer(entry);
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<Long, long[]>> ranked = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ranked.add(top.poll());
+        }
+        Collections.reverse(ranked);
+
+        List<ItemSalesResponse> responses = new ArrayList<>(ranked.size());
+        for (Map.Entry<Long, long[]> entry : ranked) {
+            String name = itemCatalogue.findById(entry.getKey()).map(Item::getName).orElse(null);
+            responses.add(new ItemSalesResponse(entry.getKey(), name, entry.getValue()[0],
+                    Money.toDecimal(entry.getValue()[1])));
+        }
+        return responses;
+    }
+
+    /**
+     * Replaces the counters with ones computed from the orders: lifetime totals from every order line, and
+     * buckets from the orders created within the retained hours, read {@code analytics.sales.rebuild-batch-size}
+     * orders at a time.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Counters rebuilt = new Counters(minutesRetained, hoursRetained);
+        Rebuild rebuild = new Rebuild(rebuilt);
+        rebuilding = rebuild;
+        try {
+            for (ItemSalesTotalView total : orderRepository.sumSalesByItem()) {
+                rebuilt.totals.add(total.getItemId(), total.getUnits(), total.getRevenueMinor());
+            }
+            long since = (start / HOUR_MILLIS - hoursRetained + 1) * HOUR_MILLIS;
+            int orders = 0;
+            long afterId = 0;
+            while (true) {
+                List<Long> orderIds = orderRepository.findIdsCreatedSince(since, afterId,
+                        PageRequest.of(0, rebuildBatchSize));
+                if (orderIds.isEmpty()) {
+                    break;
+                }
+                for (ItemSaleView sale : orderRepository.findSalesByOrderIds(orderIds)) {
+                    if (!rebuild.recorded.contains(sale.getOrderId())) {
+                        rebuilt.addToBuckets(sale.getCreatedAt(), sale.getItemId(), sale.getQuantity(),
+                                Money.times(sale.getUnitPriceMinor(), sale.getQuantity()));
+                    }
+                }
+                orders += orderIds.size();
+                afterId = orderIds.get(orderIds.size() - 1);
+            }
+            counters = rebuilt;
+            logger.info("Rebuilt the sales analytics from " + orders + " recent orders in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    private void record(long orderId, Long createdAt, long[] itemIds, int[] quantities, long[] revenues) {
+        Counters current = counters;
+        Rebuild rebuild = rebuilding;
+        current.add(createdAt, itemIds, quantities, revenues);
+        if (rebuild != null && rebuild.counters != current) {
+            rebuild.recorded.add(orderId);
+            rebuild.counters.add(createdAt, itemIds, quantities, revenues);
+        }
+    }
+
+    /**
+     * Sums the given tables into {@code [units, revenue]} per item.
+     */
+    private static Map<Long, long[]> sum(List<SalesTable> tables) {
+        Map<Long, long[]> sales = new HashMap<>();
+        for (SalesTable table : tables) {
+            for (Map.Entry<Long, ItemSales> entry : table.items.entrySet()) {
+                long[] sum = sales.computeIfAbsent(entry.getKey(), id -> new long[2]);
+                sum[0] += entry.getValue().units.sum();
+                sum[1] += entry.getValue().revenueMinor.sum();
+            }
+        }
+        return sales;
+    }
+
+    private static final class ItemSales {
+        private final LongAdder units = new LongAdder();
+
+        private final LongAdder revenueMinor = new LongAdder();
+    }
+
+    private static class SalesTable {
+        private final Map<Long, ItemSales> items = new ConcurrentHashMap<>();
+
+        void add(long itemId, long units, long revenueMinor) {
+            ItemSales sales = items.computeIfAbsent(itemId, id -> new ItemSales());
+            sales.units.add(units);
+            sales.revenueMinor.add(revenueMinor);
+        }
+    }
+
+    /**
+     * The sales of one minute or one hour, numbered from the epoch.
+     */
+    private static final class Bucket extends SalesTable {
+        private final long slot;
+
+        private Bucket(long slot) {
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * A ring of buckets where slot {@code s} lives at index {@code s % size} until a later slot claims the index.
+     */
+    private static final class BucketRing {
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        private final long slotMillis;
+
+        private BucketRing(int size, long slotMillis) {
+            this.buckets = new AtomicReferenceArray<>(Math.max(1, size));
+            this.slotMillis = slotMillis;
+        }
+
+        /**
+         * @return the bucket of the slot {@code timestamp} falls in, or {@code null} when that slot is no longer
+         * retained
+         */
+        private Bucket bucket(long timestamp) {
+            long slot = timestamp / slotMillis;
+            int index = (int) (slot % buckets.length());
+            while (true) {
+                Bucket bucket = buckets.get(index);
+                if (bucket != null && bucket.slot >= slot) {
+                    return bucket.slot == slot ? bucket : null;
+                }
+                Bucket claimed = new Bucket(slot);
+                if (buckets.compareAndSet(index, bucket, claimed)) {
+                    return claimed;
+                }
+            }
+        }
+
+        private List<SalesTable> bucketsSince(long firstSlot) {
+            List<SalesTable> tables = new ArrayList<>();
+            for (int i = 0; i < buckets.length(); i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && bucket.slot >= firstSlot) {
+                    tables.add(bucket);
+                }
+            }
+            return tables;
+        }
+    }
+
+    private static final class Counters {
+        private final SalesTable totals = new SalesTable();
+
+        private final BucketRing minutes;
+
+        private final BucketRing hours;
+
+        private Counters(int minutesRetained, int hoursRetained) {
+            this.minutes = new BucketRing(minutesRetained, MINUTE_MILLIS);
+            this.hours = new BucketRing(hoursRetained, HOUR_MILLIS);
+        }
+
+        private void add(Long createdAt, long[] itemIds, int[] quantities, long[] revenues) {
+            for (int i = 0; i < itemIds.length; i++) {
+                totals.add(itemIds[i], quantities[i], revenues[i]);
+                addToBuckets(createdAt, itemIds[i], quantities[i], revenues[i]);
+            }
+        }
+
+        /**
+         * Orders without a creation time only count towards the lifetime totals.
+         */
+        private void addToBuckets(Long createdAt, long itemId, int quantity, long revenueMinor) {
+            if (createdAt == null) {
+                return;
+            }
+            Bucket minute = minutes.bucket(createdAt);
+            if (minute != null) {
+                minute.add(itemId, quantity, revenueMinor);
+            }
+            Bucket hour = hours.bucket(createdAt);
+            if (hour != null) {
+                hour.add(itemId, quantity, revenueMinor);
+            }
+        }
+    }
+
+    private static final class Rebuild {
+        private final Counters counters;
+
+        private final Set<Long> recorded = ConcurrentHashMap.newKeySet();
+
+        private Rebuild(Counters counters) {
+            this.counters = counters;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.demo.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory token-bucket limiter keyed by an arbitrary string.
+ * <p>
+ * Keys are spread over a fixed set of stripes, each holding its buckets in an access-ordered map under its own
+ * lock, so contention is limited to keys that hash to the same stripe and every bucket is looked up, created and
+ * consumed under the lock that guards it. Each stripe holds at most its share of {@code maxBuckets}; a new key
+ * beyond that drops the stripe's least recently used bucket, so tracking a key costs the same whether or not the
+ * limiter is full and no key is ever refused. A dropped bucket that had not refilled forgets the attempts it
+ * counted. A bucket that has refilled to capacity carries no state and is dropped by the periodic
+ * {@link #evictIdle} without changing any decision.
+ */
+public class TokenBucketLimiter {
+    /**
+     * Returned by {@link #tryAcquire} when a token was granted.
+     */
+    public static final long GRANTED = 0L;
+
+    private final Stripe[] stripes;
+
+    private final double capacity;
+
+    private final double tokensPerNano;
+
+    private final LongAdder evictions = new LongAdder();
+
+    public TokenBucketLimiter(int capacity, int refillPerMinute, int maxBuckets, int stripeCount) {
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        int stripeSize = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        int bucketsPerStripe = Math.max(1, maxBuckets / stripeSize);
+        this.stripes = new Stripe[stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            stripes[i] = new Stripe(bucketsPerStripe, evictions);
+        }
+    }
+
+    /**
+     * Takes one token for {@code key}.
+     *
+     * @return {@link #GRANTED}, or the number of nanoseconds until a token becomes available
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(capacity, now);
+                stripe.buckets.put(key, bucket);
+            }
+            bucket.refill(now, capacity, tokensPerNano);
+            if (bucket.tokens >= 1.0d) {
+                bucket.tokens -= 1.0d;
+                return GRANTED;
+            }
+            return Math.max(1L, (long) Math.ceil((1.0d - bucket.tokens) / tokensPerNano));
+        }
+    }
+
+    /**
+     * Drops every bucket that has refilled to capacity, one stripe at a time.
+     */
+    public void evictIdle() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                long now = System.nanoTime();
+                Iterator<Bucket> iterator = stripe.buckets.values().iterator();
+                while (iterator.hasNext()) {
+                    Bucket bucket = iterator.next();
+                    bucket.refill(now, capacity, tokensPerNano);
+                    if (bucket.tokens >= capacity) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.buckets.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of buckets dropped to make room for a new key
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+        /**
+         * Access-ordered for LRU eviction; guarded by the stripe's monitor.
+         */
+        private final LinkedHashMap<String, Bucket> buckets;
+
+        private Stripe(int maxBuckets, LongAdder evictions) {
+            this.buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                    if (size() > maxBuckets) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+
+        private long refilledAt;
+
+        private Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+
+        private void refill(long now, double capacity, double tokensPerNano) {
+            if (now > refilledAt) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+            }
+        }
+    }
+}
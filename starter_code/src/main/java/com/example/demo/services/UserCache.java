@@ -0,0 +1,146 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, TTL-based near cache in front of {@link UserRepository#findByUsername}, shared by the security layer
+ * and the controllers. Writers must call {@link #invalidate} after creating or changing a user.
+ * <p>
+ * A load that raced with an invalidation is not cached, so a stale row read before the change cannot be
+ * reinstated after it. Expired entries are dropped on read and by a periodic sweep; when the cache is full a tenth
+ * of it is evicted in arbitrary order, so that a load never scans the whole cache.
+ */
+@Service
+public class UserCache implements MeterBinder {
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${user-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${user-cache.ttl-ms:60000}")
+    private long ttlMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @return the user's snapshot, or {@code null} when no such user exists
+     */
+    public UserSnapshot findByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(username);
+        if (entry != null) {
+            if (entry.expiresAt > now) {
+                hits.increment();
+                return entry.snapshot;
+            }
+            if (entries.remove(username, entry)) {
+                evictions.increment();
+            }
+        }
+        misses.increment();
+
+        long generation = invalidations.get();
+        User user = userRepository.findByUsername(username);
+        if (user == null) {
+            return null;
+        }
+        UserSnapshot snapshot = UserSnapshot.of(user);
+        if (maxSize > 0) {
+            if (entries.size() >= maxSize) {
+                makeRoom();
+            }
+            entries.put(username, new Entry(snapshot, now + ttlMillis));
+            if (invalidations.get() != generation) {
+                entries.remove(username);
+            }
+        }
+        return snapshot;
+    }
+
+    public void invalidate(String username) {
+        invalidations.incrementAndGet();
+        entries.remove(username);
+    }
+
+    @Scheduled(fixedDelayString = "${user-cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        evictExpired(System.currentTimeMillis());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("user.cache.hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("user.cache.misses", misses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("user.cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("user.cache.size", this, UserCache::size).register(registry);
+        Gauge.builder("user.cache.hit.ratio", this, UserCache::hitRatio).register(registry);
+    }
+
+    private double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0d : (double) hitCount / total;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private void makeRoom() {
+        int excess = entries.size() - maxSize + Math.max(1, maxSize / 10);
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry {
+        private final UserSnapshot snapshot;
+
+        private final long expiresAt;
+
+        private Entry(UserSnapshot snapshot, long expiresAt) {
+            this.snapshot = snapshot;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.User;
+
+/**
+ * Immutable copy of the user columns needed on the request path, safe to share between threads.
+ */
+public final class UserSnapshot {
+    private final long id;
+
+    private final String username;
+
+    private final String password;
+
+    private final Long cartId;
+
+    private UserSnapshot(long id, String username, String password, Long cartId) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.cartId = cartId;
+    }
+
+    public static UserSnapshot of(User user) {
+        return new UserSnapshot(user.getId(), user.getUsername(), user.getPassword(),
+                user.getCart() == null ? null : user.getCart().getId());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public Long getCartId() {
+        return cartId;
+    }
+
+    /**
+     * Builds a detached user without its cart, for callers that expect the entity type.
+     */
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setPassword(password);
+        return user;
+    }
+}
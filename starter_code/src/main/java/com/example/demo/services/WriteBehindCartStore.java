@@ -0,0 +1,485 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Optional write-behind store that keeps active carts in memory and persists them to the {@code cart} table in
+ * the background, enabled with {@code cart.write-behind.enabled}.
+ * <p>
+ * Mutations are applied to an in-memory copy and only mark it dirty, so repeated mutations of a cart between two
+ * flushes are coalesced into a single write of its final state. Dirty carts are written in batches of
+ * {@code cart.write-behind.flush-batch-size} every {@code cart.write-behind.flush-interval-ms}; a mutation that
+ * finds its cart dirty for longer than {@code cart.write-behind.max-dirty-age-ms} writes it synchronously, and a
+ * dirty cart evicted from the bounded LRU ({@code cart.write-behind.max-carts}) is written before it is dropped.
+ * Callers that need the stored state, such as order submission, go through {@link #flushAndEvict}.
+ * <p>
+ * Crash safety: a graceful shutdown flushes every dirty cart, which requires the database to outlive the
+ * application context (hence {@code DB_CLOSE_ON_EXIT=FALSE} on the H2 URL). On a crash, cart mutations acknowledged since their
+ * cart was last written are lost, which is bounded by the flush interval plus the time of one flush, or by the
+ * maximum dirty age if flushing falls behind. Orders are never affected, as a cart is always written before an
+ * order is created from it. The in-memory copy is authoritative, so the store must only be enabled on a single
+ * node.
+ */
+@Service
+public class WriteBehindCartStore implements MeterBinder {
+    Logger logger = LogManager.getLogger(WriteBehindCartStore.class);
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${cart.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cart.write-behind.max-carts:10000}")
+    private int maxCarts;
+
+    @Value("${cart.write-behind.max-dirty-age-ms:5000}")
+    private long maxDirtyAgeMillis;
+
+    @Value("${cart.write-behind.flush-batch-size:100}")
+    private int flushBatchSize;
+
+    @Value("${cart.write-behind.lock-stripes:64}")
+    private int lockStripes;
+
+    /**
+     * Access-ordered for LRU eviction; guarded by its own monitor. Entries are only added or removed while holding
+     * the cart's stripe lock as well.
+     */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private ReentrantLock[] stripes;
+
+    private final AtomicInteger dirtyCarts = new AtomicInteger();
+
+    private final LongAdder flushedCarts = new LongAdder();
+
+    private final LongAdder flushFailures = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder flushNanos = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int stripeSize = Integer.highestOneBit(Math.max(1, lockStripes - 1) << 1);
+        stripes = new ReentrantLock[stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Applies {@code mutation} to the in-memory copy of the cart, loading it first if needed, and marks it dirty.
+     * The change is all or nothing: when the mutation throws, the in-memory cart is left as it was.
+     * A result that is the cart itself is returned as a detached copy, as the in-memory copy keeps changing.
+     *
+     * @return the mutation's result, or empty when the cart does not exist
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> modify(long cartId, Function<Cart, T> mutation) {
+        T result;
+        ReentrantLock lock = stripeFor(cartId);
+        lock.lock();
+        try {
+            Entry entry = entryFor(cartId);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            // mutate a copy and swap it in only on success, so a failing mutation leaves no partial change behind
+            Cart working = entry.cart.copy();
+            result = mutation.apply(working);
+            entry.cart = working;
+            long now = System.currentTimeMillis();
+            if (!entry.dirty) {
+                entry.dirtySince = now;
+                entry.dirty = true;
+                dirtyCarts.incrementAndGet();
+            } else if (now - entry.dirtySince >= maxDirtyAgeMillis) {
+                flush(Collections.singletonList(entry));
+            }
+            if (result == entry.cart) {
+                result = (T) entry.cart.copy();
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictOverflow();
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * Applies {@code view} to the in-memory copy of the cart, loading it first if needed, without marking it dirty.
+     * A result that is the cart itself is returned as a detached copy.
+     *
+     * @return the view's result, or empty when the cart does not exist
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> read(long cartId, Function<Cart, T> view) {
+        T result;
+        ReentrantLock lock = stripeFor(cartId);
+        lock.lock();
+        try {
+            Entry entry = entryFor(cartId);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            result = view.apply(entry.cart);
+            if (result == entry.cart) {
+                result = (T) entry.cart.copy();
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictOverflow();
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * Writes the cart if it is dirty and drops it from memory, then runs {@code action} while mutations of the cart
+     * are held back, so the action sees the latest state in the database and later mutations reload its outcome.
+     *
+     * @throws RetryLaterException with 503 when the dirty cart could not be written
+     */
+    public <T> T flushAndEvict(long cartId, Supplier<T> action) {
+        ReentrantLock lock = stripeFor(cartId);
+        lock.lock();
+        try {
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(cartId);
+            }
+            if (entry != null) {
+                if (entry.dirty && !flush(Collections.singletonList(entry))) {
+                    throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, 1, "Cart could not be saved, please retry");
+                }
+                remove(entry);
+            }
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@link #flushAndEvict} for several carts at once: their dirty copies are written in one transaction, and
+     * {@code action} runs while mutations of all of them are held back.
+     *
+     * @throws RetryLaterException with 503 when the dirty carts could not be written
+     */
+    public <T> T flushAndEvictAll(Collection<Long> cartIds, Supplier<T> action) {
+        List<ReentrantLock> held = lockStripes(cartIds);
+        try {
+            List<Entry> present = new ArrayList<>();
+            List<Entry> dirty = new ArrayList<>();
+            synchronized (entries) {
+                for (Long cartId : cartIds) {
+                    Entry entry = entries.get(cartId);
+                    if (entry != null) {
+                        present.add(entry);
+                        if (entry.dirty) {
+                            dirty.add(entry);
+                        }
+                    }
+                }
+            }
+            if (!dirty.isEmpty() && !flush(dirty)) {
+                throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, 1, "Carts could not be saved, please retry");
+            }
+            for (Entry entry : present) {
+                remove(entry);
+            }
+            return action.get();
+        } finally {
+            unlock(held);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:1000}")
+    public void flushDirty() {
+        if (!enabled) {
+            return;
+        }
+        flushAll();
+    }
+
+    /**
+     * Writes every dirty cart, in batches.
+     */
+    @PreDestroy
+    public void flushAll() {
+        List<Entry> dirty = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (entry.dirty) {
+                    dirty.add(entry);
+                }
+            }
+        }
+        for (int from = 0; from < dirty.size(); from += flushBatchSize) {
+            flushBatch(dirty.subList(from, Math.min(dirty.size(), from + flushBatchSize)));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cart.write_behind.dirty", dirtyCarts, AtomicInteger::get)
+                .description("Carts changed in memory but not yet written")
+                .register(registry);
+        Gauge.builder("cart.write_behind.size", this, store -> store.size())
+                .description("Carts held in memory")
+                .register(registry);
+        FunctionTimer.builder("cart.write_behind.flush", this, store -> store.flushes.sum(),
+                store -> store.flushNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Latency of writing a batch of dirty carts")
+                .register(registry);
+        FunctionCounter.builder("cart.write_behind.flushed", flushedCarts, LongAdder::sum)
+                .description("Dirty carts written")
+                .register(registry);
+        FunctionCounter.builder("cart.write_behind.flush_failures", flushFailures, LongAdder::sum)
+                .description("Failed cart flushes; the carts stay dirty and are retried")
+                .register(registry);
+        FunctionCounter.builder("cart.write_behind.evictions", evictions, LongAdder::sum)
+                .description("Carts dropped from memory to stay within max-carts")
+                .register(registry);
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Caller holds the cart's stripe lock.
+     */
+    private Entry entryFor(long cartId) {
+        synchronized (entries) {
+            Entry entry = entries.get(cartId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Cart cart = load(cartId);
+        if (cart == null) {
+            return null;
+        }
+        Entry entry = new Entry(cartId, cart);
+        synchronized (entries) {
+            entries.put(cartId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Loads a detached cart with its lines through a dedicated entity manager, so it is never tied to the
+     * request's persistence context.
+     */
+    private Cart load(long cartId) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            List<Cart> carts = entityManager
+                    .createQuery("select distinct c from Cart c left join fetch c.lines where c.id = :id", Cart.class)
+                    .setParameter("id", cartId)
+                    .getResultList();
+            return carts.isEmpty() ? null : carts.get(0);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Caller holds the cart's stripe lock.
+     */
+    private void remove(Entry entry) {
+        synchronized (entries) {
+            entries.remove(entry.cartId);
+        }
+        entry.removed = true;
+        if (entry.dirty) {
+            entry.dirty = false;
+            dirtyCarts.decrementAndGet();
+        }
+    }
+
+    private void evictOverflow() {
+        while (true) {
+            Entry eldest;
+            synchronized (entries) {
+                if (entries.size() <= maxCarts) {
+                    return;
+                }
+                eldest = entries.values().iterator().next();
+            }
+            ReentrantLock lock = stripeFor(eldest.cartId);
+            lock.lock();
+            try {
+                if (eldest.removed) {
+                    continue;
+                }
+                if (eldest.dirty && !flush(Collections.singletonList(eldest))) {
+                    // keep it rather than lose it; the scheduled flush retries
+                    return;
+                }
+                remove(eldest);
+                evictions.increment();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void flushBatch(List<Entry> candidates) {
+        List<Long> cartIds = new ArrayList<>();
+        for (Entry entry : candidates) {
+            cartIds.add(entry.cartId);
+        }
+        List<ReentrantLock> held = lockStripes(cartIds);
+        try {
+            List<Entry> batch = new ArrayList<>();
+            for (Entry entry : candidates) {
+                if (entry.dirty && !entry.removed) {
+                    batch.add(entry);
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        } finally {
+            unlock(held);
+        }
+    }
+
+    /**
+     * Locks the stripes of all the carts in index order, so that concurrent multi-cart operations cannot
+     * deadlock; every other path holds at most one stripe at a time.
+     *
+     * @return the locks taken, to be released with {@link #unlock}
+     */
+    private List<ReentrantLock> lockStripes(Collection<Long> cartIds) {
+        SortedSet<Integer> stripeIndexes = new TreeSet<>();
+        for (Long cartId : cartIds) {
+            stripeIndexes.add(stripeIndex(cartId));
+        }
+        List<ReentrantLock> held = new ArrayList<>();
+        for (Integer index : stripeIndexes) {
+            stripes[index].lock();
+            held.add(stripes[index]);
+        }
+        return held;
+    }
+
+    private void unlock(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+
+    /**
+     * Writes the carts in one transaction. Caller holds the stripe locks of all of them.
+     *
+     * @return {@code true} when the carts were written and are clean again
+     */
+    private boolean flush(List<Entry> batch) {
+        long start = System.nanoTime();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            for (Entry entry : batch) {
+                Cart stored = entityManager.find(Cart.class, entry.cartId);
+                if (stored != null) {
+                    stored.copyContentsFrom(entry.cart);
+                }
+            }
+            entityManager.getTransaction().commit();
+            for (Entry entry : batch) {
+                if (entry.dirty) {
+                    entry.dirty = false;
+                    dirtyCarts.decrementAndGet();
+                }
+            }
+            flushedCarts.add(batch.size());
+            return true;
+        } catch (RuntimeException ex) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            flushFailures.increment();
+            logger.error("Failed to write " + batch.size() + " dirty carts", ex);
+            return false;
+        } finally {
+            entityManager.close();
+            flushes.increment();
+            flushNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private ReentrantLock stripeFor(long cartId) {
+        return stripes[stripeIndex(cartId)];
+    }
+
+    private int stripeIndex(long cartId) {
+        int hash = Long.hashCode(cartId);
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private static final class Entry {
+        private final long cartId;
+
+        /**
+         * Replaced, never mutated in place, under the cart's stripe lock.
+         */
+        private Cart cart;
+
+        /**
+         * Written under the cart's stripe lock; read without it only as a hint for picking flush candidates.
+         */
+        private volatile boolean dirty;
+
+        private long dirtySince;
+
+        private volatile boolean removed;
+
+        private Entry(long cartId, Cart cart) {
+            this.cartId = cartId;
+            this.cart = cart;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a large cart with the previous per-unit {@link BigDecimal} arithmetic and with the current minor-unit
+ * {@link Cart}, for a number of distinct items at a fixed quantity each. Add {@code -prof gc} to the JMH arguments
+ * to compare allocation per operation.
+ * <p>
+ * Run with {@code mvn test-compile} followed by executing {@link #main} on the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CartTotalBenchmark {
+    @Param({"10", "100", "1000"})
+    private int distinctItems;
+
+    @Param({"50"})
+    private int quantity;
+
+    private Item[] items;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        items = new Item[distinctItems];
+        for (int i = 0; i < distinctItems; i++) {
+            Item item = new Item();
+            item.setId((long) i);
+            item.setName("item" + i);
+            item.setDescription("item" + i);
+            item.setPrice(BigDecimal.valueOf(100 + random.nextInt(10000), 2));
+            items[i] = item;
+        }
+    }
+
+    /**
+     * The previous cart: one list entry and one {@link BigDecimal#add} per unit.
+     */
+    @Benchmark
+    public BigDecimal bigDecimalPerUnit() {
+        List<Item> cartItems = new ArrayList<>();
+        BigDecimal total = new BigDecimal(0);
+        for (Item item : items) {
+            BigDecimal price = item.getPrice();
+            for (int unit = 0; unit < quantity; unit++) {
+                cartItems.add(item);
+                total = total.add(price);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long minorUnitLines() {
+        Cart cart = new Cart();
+        for (Item item : items) {
+            cart.addItem(item, quantity);
+        }
+        return cart.getTotalMinor();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CartTotalBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.configuration.HmacJwtVerifier;
+import com.example.demo.configuration.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous per-call jjwt parser ({@code Jwts.parser().setSigningKey(..).parseClaimsJws(..)}) with
+ * {@link HmacJwtVerifier} for valid, forged and malformed tokens. Run {@link #main} on the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JwtVerificationBenchmark {
+    private static final String SECRET = "mySecretKey";
+
+    private HmacJwtVerifier verifier;
+
+    private String validToken;
+
+    private String forgedToken;
+
+    private String malformedToken;
+
+    @Setup
+    public void setUp() {
+        verifier = new HmacJwtVerifier(TextCodec.BASE64.decode(SECRET));
+        validToken = Jwts.builder()
+                .setSubject("khanh")
+                .claim("uid", 1L)
+                .claim("auth", Collections.singletonList("USER"))
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(SignatureAlgorithm.HS512, SECRET)
+                .compact();
+        char last = validToken.charAt(validToken.length() - 2);
+        forgedToken = validToken.substring(0, validToken.length() - 2) + (last == 'A' ? 'B' : 'A') + validToken.charAt(validToken.length() - 1);
+        malformedToken = validToken.replace('.', '!');
+    }
+
+    @Benchmark
+    public Jws<Claims> jjwtValid() {
+        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(validToken);
+    }
+
+    @Benchmark
+    public Object jjwtForged() {
+        try {
+            return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(forgedToken);
+        } catch (JwtException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public Object jjwtMalformed() {
+        try {
+            return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(malformedToken);
+        } catch (JwtException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public VerifiedToken hmacValid() {
+        return verifier.verify(validToken);
+    }
+
+    @Benchmark
+    public VerifiedToken hmacForged() {
+        return verifier.verify(forgedToken);
+    }
+
+    @Benchmark
+    public VerifiedToken hmacMalformed() {
+        return verifier.verify(malformedToken);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
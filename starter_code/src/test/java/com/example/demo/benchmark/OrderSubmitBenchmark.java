@@ -0,0 +1,136 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.controllers.OrderController;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.services.CartService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submits orders for carts of 1, 50 and 500 distinct items against an in-memory H2 database, measuring the
+ * latency of the submit call and, through Hibernate statistics, the JDBC statements it prepares. Refilling the
+ * cart before each submit is not measured.
+ * <p>
+ * Run with {@code mvn test-compile} followed by executing {@link #main} on the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OrderSubmitBenchmark {
+    private static final String USERNAME = "bench";
+
+    @Param({"1", "50", "500"})
+    private int lines;
+
+    private ConfigurableApplicationContext context;
+
+    private OrderController orderController;
+
+    private CartService cartService;
+
+    private Statistics statistics;
+
+    private Item[] items;
+
+    private long cartId;
+
+    private long submits;
+
+    private long statements;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        // passed as arguments so they take precedence over application.properties
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:order-submit-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--logging.level.root=WARN");
+        orderController = context.getBean(OrderController.class);
+        cartService = context.getBean(CartService.class);
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+        ItemRepository itemRepository = context.getBean(ItemRepository.class);
+        items = new Item[lines];
+        for (int i = 0; i < lines; i++) {
+            Item item = new Item();
+            item.setName("item" + i);
+            item.setDescription("item" + i);
+            item.setPrice(BigDecimal.valueOf(100 + i, 2));
+            items[i] = itemRepository.save(item);
+        }
+        User user = new User();
+        user.setUsername(USERNAME);
+        user.setPassword("unused");
+        user.setCart(new Cart());
+        cartId = context.getBean(UserRepository.class).save(user).getCart().getId();
+    }
+
+    @Setup(Level.Invocation)
+    public void fillCart() {
+        cartService.modify(cartId, cart -> {
+            for (Item item : items) {
+                cart.addItem(item);
+            }
+            return null;
+        });
+        statistics.clear();
+    }
+
+    @Benchmark
+    public ResponseEntity<OrderResponse> submit() {
+        return orderController.submit(USERNAME, null);
+    }
+
+    @TearDown(Level.Invocation)
+    public void countStatements() {
+        submits++;
+        statements += statistics.getPrepareStatementCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        System.out.println();
+        System.out.println("JDBC statements per submit with " + lines + " lines: " + (double) statements / submits);
+        context.close();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderSubmitBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.demo.configuration;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class HmacJwtVerifierTest {
+    private static final String SECRET = "mySecretKey";
+
+    private static final String HS512_HEADER = "{\"alg\":\"HS512\"}";
+
+    private HmacJwtVerifier verifier;
+
+    private long expiration;
+
+    @Before
+    public void setUp() {
+        verifier = new HmacJwtVerifier(TextCodec.BASE64.decode(SECRET));
+        // whole seconds, as the exp claim carries no milliseconds
+        expiration = (System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)) / 1000 * 1000;
+    }
+
+    @Test
+    public void validTokenVerifies() {
+        // setup
+        String token = Jwts.builder()
+                .setSubject("khanh")
+                .claim(JwtTokenProvider.CLAIM_USER_ID, 7L)
+                .claim(JwtTokenProvider.CLAIM_AUTHORITIES, Arrays.asList("USER", "ADMIN"))
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(expiration))
+                .signWith(SignatureAlgorithm.HS512, TextCodec.BASE64.decode(SECRET))
+                .compact();
+
+        // execute
+        VerifiedToken verified = verifier.verify(token);
+
+        // compare
+        Assert.assertNotNull(verified);
+        Assert.assertEquals("khanh", verified.getUsername());
+        Assert.assertEquals(Long.valueOf(7L), verified.getUserId());
+        Assert.assertEquals(2, verified.getAuthorities().size());
+        Assert.assertEquals("USER", verified.getAuthorities().get(0).getAuthority());
+        Assert.assertEquals("ADMIN", verified.getAuthorities().get(1).getAuthority());
+        Assert.assertEquals(expiration, verified.getExpiresAt());
+        Assert.assertTrue(verified.hasIdentityClaims());
+    }
+
+    @Test
+    public void tokenWithoutIdentityClaimsVerifies() {
+        // setup
+        String token = sign(HS512_HEADER, "{\"sub\":\"khanh\",\"exp\":" + expiration / 1000 + "}");
+
+        // execute
+        VerifiedToken verified = verifier.verify(token);
+
+        // compare
+        Assert.assertNotNull(verified);
+        Assert.assertEquals("khanh", verified.getUsername());
+        Assert.assertFalse(verified.hasIdentityClaims());
+    }
+
+    @Test
+    public void tamperedPayloadIsRejected() {
+        // setup
+        String token = sign(HS512_HEADER, claims("khanh"));
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + encode(claims("admin")) + "." + parts[2];
+
+        // execute and compare
+        Assert.assertNotNull(verifier.verify(token));
+        Assert.assertNull(verifier.verify(forged));
+    }
+
+    @Test
+    public void tamperedSignatureIsRejected() {
+        // setup
+        String token = sign(HS512_HEADER, claims("khanh"));
+        int index = token.lastIndexOf('.') + 10;
+        String forged = token.substring(0, index) + (token.charAt(index) == 'A' ? 'B' : 'A') + token.substring(index + 1);
+
+        // execute and compare
+        Assert.assertNull(verifier.verify(forged));
+    }
+
+    @Test
+    public void otherAlgorithmsAreRejected() {
+        // setup: correctly HMAC-SHA512 signed, but announcing another algorithm
+        String hs256 = sign("{\"alg\":\"HS256\"}", claims("khanh"));
+        String none = sign("{\"alg\":\"none\"}", claims("khanh"));
+        String unsigned = none.substring(0, none.lastIndexOf('.') + 1);
+        String missing = sign("{\"typ\":\"JWT\"}", claims("khanh"));
+
+        // execute and compare
+        Assert.assertNull(verifier.verify(hs256));
+        Assert.assertNull(verifier.verify(none));
+        Assert.assertNull(verifier.verify(unsigned));
+        Assert.assertNull(verifier.verify(missing));
+    }
+
+    @Test
+    public void expiredTokenIsRejected() {
+        // setup
+        long expired = System.currentTimeMillis() / 1000 - 1;
+        String token = sign(HS512_HEADER, "{\"sub\":\"khanh\",\"exp\":" + expired + "}");
+        String noExpiry = sign(HS512_HEADER, "{\"sub\":\"khanh\"}");
+
+        // execute and compare
+        Assert.assertNull(verifier.verify(token));
+        Assert.assertNull(verifier.verify(noExpiry));
+    }
+
+    @Test
+    public void malformedSignatureIsRejected() {
+        // setup
+        String token = sign(HS512_HEADER, claims("khanh"));
+        int signatureStart = token.lastIndexOf('.') + 1;
+        String truncated = token.substring(0, token.length() - 1);
+        String extended = token + "A";
+        String standardBase64 = token.substring(0, signatureStart + 5) + "+" + token.substring(signatureStart + 6);
+        String padded = token.substring(0, token.length() - 1) + "=";
+        String nonAscii = token.substring(0, token.length() - 1) + "é";
+
+        // execute and compare
+        Assert.assertNull(verifier.verify(truncated));
+        Assert.assertNull(verifier.verify(extended));
+        Assert.assertNull(verifier.verify(standardBase64));
+        Assert.assertNull(verifier.verify(padded));
+        Assert.assertNull(verifier.verify(nonAscii));
+    }
+
+    @Test
+    public void nonAsciiSigningInputIsRejected() {
+        // setup: the signature matches the UTF-8 bytes of the signing input, which is not valid base64url
+        String signingInput = encode(HS512_HEADER) + "." + encode(claims("khanh")) + "é";
+        String token = signingInput + "." + signature(signingInput.getBytes(StandardCharsets.UTF_8));
+
+        // execute and compare
+        Assert.assertNull(verifier.verify(token));
+    }
+
+    @Test
+    public void malformedStructureIsRejected() {
+        // setup
+        String token = sign(HS512_HEADER, claims("khanh"));
+        String[] parts = token.split("\\.");
+
+        // execute and compare
+        Assert.assertNull(verifier.verify(null));
+        Assert.assertNull(verifier.verify(""));
+        Assert.assertNull(verifier.verify(parts[0] + parts[1] + "." + parts[2]));
+        Assert.assertNull(verifier.verify("." + parts[1] + "." + parts[2]));
+        Assert.assertNull(verifier.verify(parts[0] + ".." + parts[2]));
+        Assert.assertNull(verifier.verify(parts[0] + "." + parts[1] + "x." + parts[2]));
+    }
+
+    private String claims(String username) {
+        return "{\"sub\":\"" + username + "\",\"uid\":1,\"auth\":[\"USER\"],\"exp\":" + expiration / 1000 + "}";
+    }
+
+    private static String sign(String header, String payload) {
+        String signingInput = encode(header) + "." + encode(payload);
+        return signingInput + "." + signature(signingInput.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String signature(byte[] signingInput) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA512");
+            mac.init(new SecretKeySpec(TextCodec.BASE64.decode(SECRET), "HmacSHA512"));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(signingInput));
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
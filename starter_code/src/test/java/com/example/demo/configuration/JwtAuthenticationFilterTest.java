@@ -0,0 +1,159 @@
+package com.example.demo.configuration;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.services.CustomUserDetails;
+import com.example.demo.services.CustomUserService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class JwtAuthenticationFilterTest {
+    private static final String TOKEN = "header.payload.signature";
+
+    @InjectMocks
+    private JwtAuthenticationFilter jwtAuthenticationFilter;
+
+    @Mock
+    private JwtTokenProvider tokenProvider;
+
+    @Mock
+    private CustomUserService customUserService;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(jwtAuthenticationFilter, "claimsAuthentication", true);
+        SecurityContextHolder.clearContext();
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void identityClaimsAuthenticateWithoutLookup() {
+        try {
+            // setup
+            VerifiedToken verifiedToken = new VerifiedToken(7L, "khanh", Arrays.asList("USER", "ADMIN"),
+                    System.currentTimeMillis() + 60000);
+            Mockito.doReturn(verifiedToken).when(tokenProvider).parseToken(TOKEN);
+
+            // execute
+            Authentication authentication = filter();
+
+            // compare
+            Assert.assertNotNull(authentication);
+            CustomUserDetails principal = (CustomUserDetails) authentication.getPrincipal();
+            Assert.assertEquals(7L, principal.getUser().getId());
+            Assert.assertEquals("khanh", principal.getUsername());
+            Assert.assertEquals(2, authentication.getAuthorities().size());
+            Assert.assertTrue(authentication.isAuthenticated());
+            Mockito.verifyZeroInteractions(customUserService);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void missingIdentityClaimsFallBackToLookup() {
+        try {
+            // setup
+            VerifiedToken verifiedToken = new VerifiedToken(null, "khanh", Collections.<String>emptyList(),
+                    System.currentTimeMillis() + 60000);
+            Mockito.doReturn(verifiedToken).when(tokenProvider).parseToken(TOKEN);
+            CustomUserDetails stored = storedUser();
+            Mockito.doReturn(stored).when(customUserService).loadUserByUsername("khanh");
+
+            // execute
+            Authentication authentication = filter();
+
+            // compare
+            Assert.assertNotNull(authentication);
+            Assert.assertSame(stored, authentication.getPrincipal());
+            Mockito.verify(customUserService).loadUserByUsername("khanh");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void disabledClaimsAuthenticationForcesLookup() {
+        try {
+            // setup
+            ReflectionTestUtils.setField(jwtAuthenticationFilter, "claimsAuthentication", false);
+            VerifiedToken verifiedToken = new VerifiedToken(7L, "khanh", Collections.singletonList("ADMIN"),
+                    System.currentTimeMillis() + 60000);
+            Mockito.doReturn(verifiedToken).when(tokenProvider).parseToken(TOKEN);
+            CustomUserDetails stored = storedUser();
+            Mockito.doReturn(stored).when(customUserService).loadUserByUsername("khanh");
+
+            // execute
+            Authentication authentication = filter();
+
+            // compare
+            Assert.assertSame(stored, authentication.getPrincipal());
+            Assert.assertEquals(1, authentication.getAuthorities().size());
+            Assert.assertEquals("USER", authentication.getAuthorities().iterator().next().getAuthority());
+            Mockito.verify(customUserService).loadUserByUsername("khanh");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void invalidTokenLeavesRequestUnauthenticated() {
+        try {
+            // setup
+            Mockito.doReturn(null).when(tokenProvider).parseToken(TOKEN);
+
+            // execute
+            Authentication authentication = filter();
+
+            // compare
+            Assert.assertNull(authentication);
+            Mockito.verifyZeroInteractions(customUserService);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs a request bearing {@link #TOKEN} through the filter.
+     *
+     * @return the authentication it left in the security context
+     */
+    private Authentication filter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/item");
+        request.addHeader("Authorization", "Bearer " + TOKEN);
+        MockFilterChain filterChain = new MockFilterChain();
+        jwtAuthenticationFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+        Assert.assertNotNull(filterChain.getRequest());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private CustomUserDetails storedUser() {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("khanh");
+        user.setPassword("hash");
+        return new CustomUserDetails(user);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.configuration;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class VerifiedTokenCacheTest {
+    private VerifiedTokenCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new VerifiedTokenCache();
+        ReflectionTestUtils.setField(cache, "maxSize", 20);
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted() {
+        // setup
+        VerifiedToken token = token(60000);
+        cache.put("token-1", token);
+
+        // execute
+        VerifiedToken hit = cache.get("token-1");
+        VerifiedToken miss = cache.get("token-2");
+
+        // compare
+        Assert.assertSame(token, hit);
+        Assert.assertNull(miss);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void expiredTokenIsDroppedOnRead() throws Exception {
+        // setup
+        cache.put("short-lived", token(100));
+        Assert.assertNotNull(cache.get("short-lived"));
+        Thread.sleep(150);
+
+        // execute
+        VerifiedToken expired = cache.get("short-lived");
+
+        // compare
+        Assert.assertNull(expired);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void alreadyExpiredTokenIsNotStored() {
+        // execute
+        cache.put("expired", token(-1));
+
+        // compare
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get("expired"));
+    }
+
+    @Test
+    public void sweepDropsOnlyExpiredTokens() throws Exception {
+        // setup
+        cache.put("short-lived-1", token(100));
+        cache.put("short-lived-2", token(100));
+        cache.put("long-lived", token(60000));
+        Thread.sleep(150);
+
+        // execute
+        cache.evictExpired();
+
+        // compare
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(2, cache.getEvictionCount());
+        Assert.assertNotNull(cache.get("long-lived"));
+        Assert.assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void fullCacheEvictsATenth() {
+        // setup
+        for (int i = 0; i < 20; i++) {
+            cache.put("token-" + i, token(60000));
+        }
+        Assert.assertEquals(20, cache.size());
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        // execute
+        VerifiedToken newest = token(60000);
+        cache.put("newest", newest);
+
+        // compare
+        Assert.assertEquals(2, cache.getEvictionCount());
+        Assert.assertEquals(19, cache.size());
+        Assert.assertSame(newest, cache.get("newest"));
+        for (int i = 0; i < 19; i++) {
+            cache.put("again-" + i, token(60000));
+        }
+        Assert.assertTrue(cache.size() <= 20);
+    }
+
+    @Test
+    public void zeroSizeDisablesCache() {
+        // setup
+        ReflectionTestUtils.setField(cache, "maxSize", 0);
+
+        // execute
+        cache.put("token-1", token(60000));
+
+        // compare
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get("token-1"));
+        Assert.assertEquals(0, cache.getMissCount());
+    }
+
+    private static VerifiedToken token(long ttlMillis) {
+        return new VerifiedToken(1L, "khanh", Collections.singletonList("USER"), System.currentTimeMillis() + ttlMillis);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BatchCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.model.responses.OrderLineResponse;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.services.CartService;
+import com.example.demo.services.WriteBehindCartStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hammers a single cart with hundreds of parallel mutations and checks that no update is lost, with database row
+ * locks only, with in-process lock striping and with the write-behind store, and that a failing batch leaves a
+ * pending write-behind cart as it was.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cart-concurrency;DB_CLOSE_DELAY=-1",
+        "cart.update.max-attempts=1000",
+        "cart.update.retry-backoff-ms=1"})
+public class CartControllerConcurrencyTest {
+    private static final int THREADS = 16;
+
+    private static final int SINGLE_ADDS = 300;
+
+    private static final int BATCH_ADDS = 100;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private CartController cartController;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private WriteBehindCartStore writeBehindCartStore;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(cartService, "stripedLocking", false);
+        writeBehindCartStore.flushAll();
+        ReflectionTestUtils.setField(writeBehindCartStore, "enabled", false);
+    }
+
+    @Test
+    public void concurrentUpdatesWithRowLocks() throws Exception {
+        ReflectionTestUtils.setField(cartService, "stripedLocking", false);
+        hammerCart("row-locks");
+    }
+
+    @Test
+    public void concurrentUpdatesWithStripedLocks() throws Exception {
+        ReflectionTestUtils.setField(cartService, "stripedLocking", true);
+        hammerCart("striped");
+    }
+
+    @Test
+    public void concurrentUpdatesWithWriteBehind() throws Exception {
+        ReflectionTestUtils.setField(writeBehindCartStore, "enabled", true);
+        hammerCart("write-behind");
+
+        // submitting writes the pending cart first and orders its full contents
+        ResponseEntity<OrderResponse> order = orderController.submit("write-behind", null);
+        Assert.assertEquals(HttpStatus.OK, order.getStatusCode());
+        Assert.assertEquals(new BigDecimal("950.00"), order.getBody().getTotal());
+        Assert.assertEquals(2, order.getBody().getLines().size());
+        ResponseEntity<List<OrderResponse>> history = orderController.getOrdersForUser("write-behind", 0L, null);
+        Assert.assertEquals(1, history.getBody().size());
+        int units = 0;
+        for (OrderLineResponse line : history.getBody().get(0).getLines()) {
+            units += line.getQuantity();
+        }
+        Assert.assertEquals(SINGLE_ADDS + BATCH_ADDS * 2, units);
+        Assert.assertEquals(order.getBody().getTotal(), history.getBody().get(0).getTotal());
+        Cart cleared = fixtures.findCart(userRepository.findByUsername("write-behind").getCart().getId());
+        Assert.assertEquals(0, cleared.getLines().size());
+        Assert.assertEquals(0, cleared.getTotalMinor());
+    }
+
+    @Test
+    public void failedBatchLeavesDirtyCartUnchanged() {
+        // setup
+        ReflectionTestUtils.setField(writeBehindCartStore, "enabled", true);
+        Item rice = fixtures.createItem("rice", "2.50");
+        Item bean = fixtures.createItem("bean", "1.00");
+        User user = fixtures.createUser("failed-batch");
+        ModifyCartRequest single = new ModifyCartRequest();
+        single.setUsername("failed-batch");
+        single.setItemId(rice.getId());
+        single.setQuantity(2);
+        Assert.assertEquals(HttpStatus.OK, cartController.addTocart(single, null).getStatusCode());
+        BatchCartRequest overflowing = new BatchCartRequest();
+        overflowing.setUsername("failed-batch");
+        overflowing.setOperations(Arrays.asList(
+                new CartOperation(CartOperation.Type.ADD, bean.getId(), 3),
+                new CartOperation(CartOperation.Type.ADD, rice.getId(), Integer.MAX_VALUE)));
+
+        // execute
+        ResponseEntity<CartResponse> rejected = cartController.batch(overflowing);
+
+        // compare
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, rejected.getStatusCode());
+        BatchCartRequest noop = new BatchCartRequest();
+        noop.setUsername("failed-batch");
+        noop.setOperations(Collections.singletonList(new CartOperation(CartOperation.Type.REMOVE, bean.getId(), 1)));
+        CartResponse inMemory = cartController.batch(noop).getBody();
+        Assert.assertEquals(1, inMemory.getLines().size());
+        Assert.assertEquals(2, inMemory.getLine(rice.getId()).getQuantity());
+        Assert.assertEquals(new BigDecimal("5.00"), inMemory.getTotal());
+        writeBehindCartStore.flushAll();
+        Cart stored = fixtures.findCart(user.getCart().getId());
+        Assert.assertEquals(1, stored.getLines().size());
+        Assert.assertEquals(2, stored.getLine(rice.getId()).getQuantity());
+        Assert.assertEquals(500, stored.getTotalMinor());
+    }
+
+    private void hammerCart(String username) throws Exception {
+        // setup
+        Item rice = fixtures.createItem("rice", "2.50");
+        Item bean = fixtures.createItem("bean", "1.00");
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("unused");
+        user.setCart(new Cart());
+        user = userRepository.save(user);
+
+        ModifyCartRequest single = new ModifyCartRequest();
+        single.setUsername(username);
+        single.setItemId(rice.getId());
+        single.setQuantity(1);
+        BatchCartRequest batch = new BatchCartRequest();
+        batch.setUsername(username);
+        batch.setOperations(Collections.singletonList(new CartOperation(CartOperation.Type.ADD, bean.getId(), 2)));
+
+        // execute
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<ResponseEntity<CartResponse>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < SINGLE_ADDS + BATCH_ADDS; i++) {
+                boolean useBatch = i % 4 == 3;
+                results.add(executor.submit(() -> useBatch ? cartController.batch(batch) : cartController.addTocart(single, null)));
+            }
+            for (Future<ResponseEntity<CartResponse>> result : results) {
+                Assert.assertEquals(HttpStatus.OK, result.get(60, TimeUnit.SECONDS).getStatusCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // compare
+        writeBehindCartStore.flushAll();
+        Cart cart = fixtures.findCart(user.getCart().getId());
+        CartLine riceLine = cart.getLine(rice.getId());
+        CartLine beanLine = cart.getLine(bean.getId());
+        Assert.assertEquals(SINGLE_ADDS, riceLine.getQuantity());
+        Assert.assertEquals(BATCH_ADDS * 2, beanLine.getQuantity());
+        Assert.assertEquals(95000, cart.getTotalMinor());
+        Assert.assertEquals(riceLine.getLineTotalMinor() + beanLine.getLineTotalMinor(), cart.getTotalMinor());
+    }
+}
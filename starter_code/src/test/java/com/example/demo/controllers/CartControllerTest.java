@@ -3,11 +3,18 @@ package com.example.demo.controllers;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.ItemRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BatchCartRequest;
+import com.example.demo.model.requests.CartOperation;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartLineResponse;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.services.CartService;
+import com.example.demo.services.IdempotencyService;
+import com.example.demo.services.ItemCatalogue;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSnapshot;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -17,9 +24,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -28,13 +40,22 @@ public class CartControllerTest {
     private CartController cartController;
 
     @Mock
-    private UserRepository userRepository;
+    private UserCache userCache;
 
     @Mock
-    private ItemRepository itemRepository;
+    private ItemCatalogue itemCatalogue;
 
     @Mock
-    private CartRepository cartRepository;
+    private CartService cartService;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(cartController, "maxBatchOperations", 3);
+        stubIdempotency();
+    }
 
     @Test
     public void addToCart() {
@@ -52,22 +73,88 @@ public class CartControllerTest {
             cart.setUser(user);
             user.setCart(cart);
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
-            Mockito.doReturn(item).when(itemRepository).findById(1L);
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(item).when(itemCatalogue).findById(1L);
+            stubModify(cart);
             // execute
-            ResponseEntity<Cart> responseEntity = cartController.addTocart(modifyCartRequest);
+            ResponseEntity<CartResponse> responseEntity = cartController.addTocart(modifyCartRequest, null);
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-            Assert.assertEquals(1, responseEntity.getBody().getId().longValue());
-            Assert.assertEquals(1, responseEntity.getBody().getItems().size());
-            Assert.assertEquals(1, responseEntity.getBody().getItems().get(0).getId().longValue());
-            Assert.assertEquals("rice", responseEntity.getBody().getItems().get(0).getName());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().getItems().get(0).getPrice());
-            Assert.assertEquals("rice", responseEntity.getBody().getItems().get(0).getDescription());
-            Assert.assertEquals("khanh", responseEntity.getBody().getUser().getUsername());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().getTotal());
+            Assert.assertEquals(1, responseEntity.getBody().getId());
+            Assert.assertEquals(1, responseEntity.getBody().getLines().size());
+            CartLineResponse line = responseEntity.getBody().getLine(1L);
+            Assert.assertEquals(1, line.getQuantity());
+            Assert.assertEquals(new BigDecimal("5.00"), line.getUnitPrice());
+            Assert.assertEquals(1, line.getItemId());
+            Assert.assertEquals("rice", line.getName());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().getTotal());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void addToCartMergesQuantity() {
+        try {
+            // setup
+            ModifyCartRequest modifyCartRequest = new ModifyCartRequest();
+            modifyCartRequest.setUsername("khanh");
+            modifyCartRequest.setItemId(1);
+            modifyCartRequest.setQuantity(500);
+            User user = new User();
+            user.setUsername("khanh");
+            Optional<Item> item = createTestItem();
+            Cart cart = new Cart();
+            cart.setId(1L);
+            cart.setUser(user);
+            cart.addItem(item.get(), 2);
+            user.setCart(cart);
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(item).when(itemCatalogue).findById(1L);
+            stubModify(cart);
+            // execute
+            ResponseEntity<CartResponse> responseEntity = cartController.addTocart(modifyCartRequest, null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals(1, responseEntity.getBody().getLines().size());
+            Assert.assertEquals(502, responseEntity.getBody().getLine(1L).getQuantity());
+            Assert.assertEquals(new BigDecimal("2510.00"), responseEntity.getBody().getTotal());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void addToCartOverflow() {
+        try {
+            // setup
+            ModifyCartRequest modifyCartRequest = new ModifyCartRequest();
+            modifyCartRequest.setUsername("khanh");
+            modifyCartRequest.setItemId(1);
+            modifyCartRequest.setQuantity(Integer.MAX_VALUE);
+            User user = new User();
+            user.setUsername("khanh");
+            Optional<Item> item = createTestItem();
+            Cart cart = new Cart();
+            cart.setId(1L);
+            cart.setUser(user);
+            cart.addItem(item.get(), 2);
+            user.setCart(cart);
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(item).when(itemCatalogue).findById(1L);
+            stubModify(cart);
+            // execute
+            ResponseEntity<CartResponse> responseEntity = cartController.addTocart(modifyCartRequest, null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+            Assert.assertEquals(2, cart.getLine(1L).getQuantity());
+            Assert.assertEquals(1000, cart.getTotalMinor());
         } catch (Exception ex) {
             throw ex;
         }
@@ -82,9 +169,9 @@ public class CartControllerTest {
             modifyCartRequest.setItemId(1);
             modifyCartRequest.setQuantity(1);
 
-            Mockito.doReturn(null).when(userRepository).findByUsername("khanh1");
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh1");
             // execute
-            ResponseEntity<Cart> responseEntity = cartController.addTocart(modifyCartRequest);
+            ResponseEntity<CartResponse> responseEntity = cartController.addTocart(modifyCartRequest, null);
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -106,10 +193,10 @@ public class CartControllerTest {
             user.setUsername("khanh");
             Optional<Item> item = createTestItem();
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
-            Mockito.doReturn(item).when(itemRepository).findById(0L);
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(item).when(itemCatalogue).findById(0L);
             // execute
-            ResponseEntity<Cart> responseEntity = cartController.addTocart(modifyCartRequest);
+            ResponseEntity<CartResponse> responseEntity = cartController.addTocart(modifyCartRequest, null);
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -136,18 +223,18 @@ public class CartControllerTest {
             cart.addItem(item.get());
             user.setCart(cart);
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
-            Mockito.doReturn(item).when(itemRepository).findById(1L);
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(item).when(itemCatalogue).findById(1L);
+            stubModify(cart);
             // execute
-            ResponseEntity<Cart> responseEntity = cartController.removeFromcart(modifyCartRequest);
+            ResponseEntity<CartResponse> responseEntity = cartController.removeFromcart(modifyCartRequest);
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-            Assert.assertEquals(1, responseEntity.getBody().getId().longValue());
-            Assert.assertEquals(0, responseEntity.getBody().getItems().size());
-            Assert.assertEquals("khanh", responseEntity.getBody().getUser().getUsername());
-            Assert.assertEquals(BigDecimal.valueOf(0), responseEntity.getBody().getTotal());
+            Assert.assertEquals(1, responseEntity.getBody().getId());
+            Assert.assertEquals(0, responseEntity.getBody().getLines().size());
+            Assert.assertEquals(new BigDecimal("0.00"), responseEntity.getBody().getTotal());
         } catch (Exception ex) {
             throw ex;
         }
@@ -162,9 +249,9 @@ public class CartControllerTest {
             modifyCartRequest.setItemId(1);
             modifyCartRequest.setQuantity(1);
 
-            Mockito.doReturn(null).when(userRepository).findByUsername("khanh1");
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh1");
             // execute
-            ResponseEntity<Cart> responseEntity = cartController.removeFromcart(modifyCartRequest);
+            ResponseEntity<CartResponse> responseEntity = cartController.removeFromcart(modifyCartRequest);
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -186,10 +273,10 @@ public class CartControllerTest {
             user.setUsername("khanh");
             Optional<Item> item = createTestItem();
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
-            Mockito.doReturn(item).when(itemRepository).findById(0L);
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(item).when(itemCatalogue).findById(0L);
             // execute
-            ResponseEntity<Cart> responseEntity = cartController.removeFromcart(modifyCartRequest);
+            ResponseEntity<CartResponse> responseEntity = cartController.removeFromcart(modifyCartRequest);
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -199,6 +286,128 @@ public class CartControllerTest {
         }
     }
 
+    @Test
+    public void batch() {
+        try {
+            // setup
+            User user = new User();
+            user.setUsername("khanh");
+            Cart cart = new Cart();
+            cart.setId(1L);
+            cart.setUser(user);
+            user.setCart(cart);
+            BatchCartRequest batchCartRequest = new BatchCartRequest();
+            batchCartRequest.setUsername("khanh");
+            batchCartRequest.setOperations(Arrays.asList(
+                    new CartOperation(CartOperation.Type.ADD, 1, 3),
+                    new CartOperation(CartOperation.Type.SET, 1, 2)));
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doAnswer(invocation -> {
+                cart.addItem(createTestItem().get(), 3);
+                cart.setItemQuantity(createTestItem().get(), 2);
+                Function<Cart, ?> view = invocation.getArgument(2);
+                return Optional.of(view.apply(cart));
+            }).when(cartService).applyBatch(Mockito.eq(1L), Mockito.eq(batchCartRequest.getOperations()), Mockito.any());
+            // execute
+            ResponseEntity<CartResponse> responseEntity = cartController.batch(batchCartRequest);
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals(2, responseEntity.getBody().getLine(1L).getQuantity());
+            Assert.assertEquals(new BigDecimal("10.00"), responseEntity.getBody().getTotal());
+            Mockito.verifyZeroInteractions(itemCatalogue);
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void batchNotFoundItem() {
+        try {
+            // setup
+            User user = new User();
+            user.setUsername("khanh");
+            Cart cart = new Cart();
+            cart.setId(1L);
+            user.setCart(cart);
+            BatchCartRequest batchCartRequest = new BatchCartRequest();
+            batchCartRequest.setUsername("khanh");
+            batchCartRequest.setOperations(Collections.singletonList(new CartOperation(CartOperation.Type.ADD, 9, 1)));
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(Optional.empty()).when(cartService)
+                    .applyBatch(Mockito.eq(1L), Mockito.eq(batchCartRequest.getOperations()), Mockito.any());
+            // execute
+            ResponseEntity<CartResponse> responseEntity = cartController.batch(batchCartRequest);
+
+            // compare
+            Assert.assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void batchOverflow() {
+        try {
+            // setup
+            User user = new User();
+            user.setUsername("khanh");
+            Cart cart = new Cart();
+            cart.setId(1L);
+            user.setCart(cart);
+            BatchCartRequest batchCartRequest = new BatchCartRequest();
+            batchCartRequest.setUsername("khanh");
+            batchCartRequest.setOperations(Arrays.asList(
+                    new CartOperation(CartOperation.Type.ADD, 1, 1),
+                    new CartOperation(CartOperation.Type.ADD, 1, Integer.MAX_VALUE)));
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doThrow(new ArithmeticException("integer overflow")).when(cartService)
+                    .applyBatch(Mockito.eq(1L), Mockito.eq(batchCartRequest.getOperations()), Mockito.any());
+            // execute
+            ResponseEntity<CartResponse> responseEntity = cartController.batch(batchCartRequest);
+
+            // compare
+            Assert.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void batchTooLarge() {
+        try {
+            // setup
+            BatchCartRequest batchCartRequest = new BatchCartRequest();
+            batchCartRequest.setUsername("khanh");
+            batchCartRequest.setOperations(Collections.nCopies(4, new CartOperation(CartOperation.Type.ADD, 1, 1)));
+            // execute
+            ResponseEntity<CartResponse> responseEntity = cartController.batch(batchCartRequest);
+
+            // compare
+            Assert.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+            Mockito.verifyZeroInteractions(userCache, cartService);
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    private void stubIdempotency() {
+        Mockito.doAnswer(invocation -> {
+            Supplier<?> action = invocation.getArgument(4);
+            return action.get();
+        }).when(idempotencyService).execute(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    private void stubModify(Cart cart) {
+        Mockito.doAnswer(invocation -> {
+            Function<Cart, ?> mutation = invocation.getArgument(1);
+            return Optional.ofNullable(mutation.apply(cart));
+        }).when(cartService).modify(Mockito.eq(1L), Mockito.any());
+    }
+
     private Optional<Item> createTestItem() {
         Item item = new Item();
         item.setId(1L);
@@ -0,0 +1,187 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.services.IdempotencyService;
+import com.example.demo.services.RetryLaterException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries requests with the same {@code Idempotency-Key} against the real store and database and checks that
+ * they are applied once.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:integration;DB_CLOSE_DELAY=-1")
+public class IdempotencyKeyTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private CartController cartController;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Test
+    public void addToCartRetryIsAppliedOnce() {
+        // setup
+        User user = fixtures.createUser("add-retry");
+        ModifyCartRequest request = createRequest(user, fixtures.createItem("rice", "2.50"), 2);
+
+        // execute
+        ResponseEntity<CartResponse> first = cartController.addTocart(request, "add-1");
+        ResponseEntity<CartResponse> retry = cartController.addTocart(request, "add-1");
+        ResponseEntity<CartResponse> next = cartController.addTocart(request, "add-2");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, first.getStatusCode());
+        Assert.assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        Assert.assertEquals(HttpStatus.OK, retry.getStatusCode());
+        Assert.assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        Assert.assertEquals(new BigDecimal("5.00"), retry.getBody().getTotal());
+        Assert.assertEquals(new BigDecimal("10.00"), next.getBody().getTotal());
+        Cart cart = fixtures.findCart(user.getCart().getId());
+        Assert.assertEquals(4, cart.getLine(request.getItemId()).getQuantity());
+    }
+
+    @Test
+    public void submitRetryCreatesOneOrder() {
+        // setup
+        User user = fixtures.createUser("submit-retry");
+        cartController.addTocart(createRequest(user, fixtures.createItem("bean", "1.00"), 3), null);
+
+        // execute
+        ResponseEntity<OrderResponse> first = orderController.submit("submit-retry", "submit-1");
+        ResponseEntity<OrderResponse> retry = orderController.submit("submit-retry", "submit-1");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, retry.getStatusCode());
+        Assert.assertEquals(first.getBody().getId(), retry.getBody().getId());
+        Assert.assertEquals(new BigDecimal("3.00"), retry.getBody().getTotal());
+        List<OrderResponse> history = orderController.getOrdersForUser("submit-retry", 0L, null).getBody();
+        Assert.assertEquals(1, history.size());
+        Cart cart = fixtures.findCart(user.getCart().getId());
+        Assert.assertEquals(0, cart.getLines().size());
+        Assert.assertEquals(0, cart.getTotalMinor());
+    }
+
+    @Test
+    public void storedResponseIsReplayedFromTheDatabase() {
+        // setup
+        User user = fixtures.createUser("stored-retry");
+        ModifyCartRequest request = createRequest(user, fixtures.createItem("tea", "4.00"), 1);
+        ResponseEntity<CartResponse> first = cartController.addTocart(request, "stored-1");
+        // drop the in-memory copy, as after a restart or an eviction
+        Map<?, ?> entries = (Map<?, ?>) ReflectionTestUtils.getField(idempotencyService, "entries");
+        synchronized (entries) {
+            entries.clear();
+        }
+
+        // execute
+        ResponseEntity<CartResponse> retry = cartController.addTocart(request, "stored-1");
+
+        // compare
+        Assert.assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        Assert.assertEquals(first.getBody().getId(), retry.getBody().getId());
+        Assert.assertEquals("tea", retry.getBody().getLine(request.getItemId()).getName());
+        Assert.assertEquals(new BigDecimal("4.00"), retry.getBody().getTotal());
+        Cart cart = fixtures.findCart(user.getCart().getId());
+        Assert.assertEquals(1, cart.getLine(request.getItemId()).getQuantity());
+    }
+
+    @Test
+    public void keyReusedWithDifferentPayloadIsRejected() {
+        // setup
+        User user = fixtures.createUser("mismatch");
+        Item item = fixtures.createItem("salt", "0.50");
+        cartController.addTocart(createRequest(user, item, 1), "mismatch-1");
+
+        // execute
+        ResponseEntity<CartResponse> responseEntity = cartController.addTocart(createRequest(user, item, 5), "mismatch-1");
+
+        // compare
+        Assert.assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, responseEntity.getStatusCode());
+        Cart cart = fixtures.findCart(user.getCart().getId());
+        Assert.assertEquals(1, cart.getLine(item.getId()).getQuantity());
+    }
+
+    /**
+     * A request still in progress is neither evicted nor keeps the completed responses behind it from being evicted.
+     */
+    @Test
+    public void completedResponsesAreEvictedPastARequestInProgress() throws Exception {
+        // setup
+        Object maxEntries = ReflectionTestUtils.getField(idempotencyService, "maxEntries");
+        ReflectionTestUtils.setField(idempotencyService, "maxEntries", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slow = new Thread(() -> idempotencyService.execute("slow", "eviction", null, String.class, () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return ResponseEntity.ok("slow");
+        }));
+        try {
+            slow.start();
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // execute
+            for (int i = 0; i < 3; i++) {
+                idempotencyService.execute("fast-" + i, "eviction", null, String.class, () -> ResponseEntity.ok("fast"));
+            }
+            Map<?, ?> entries = (Map<?, ?>) ReflectionTestUtils.getField(idempotencyService, "entries");
+            int completed;
+            synchronized (entries) {
+                completed = entries.size();
+            }
+            RetryLaterException conflict = null;
+            try {
+                idempotencyService.execute("slow", "eviction", null, String.class, () -> ResponseEntity.ok("again"));
+            } catch (RetryLaterException ex) {
+                conflict = ex;
+            }
+
+            // compare
+            Assert.assertEquals(1, completed);
+            Assert.assertNotNull(conflict);
+        } finally {
+            release.countDown();
+            slow.join();
+            ReflectionTestUtils.setField(idempotencyService, "maxEntries", maxEntries);
+        }
+    }
+
+    private ModifyCartRequest createRequest(User user, Item item, int quantity) {
+        ModifyCartRequest request = new ModifyCartRequest();
+        request.setUsername(user.getUsername());
+        request.setItemId(item.getId());
+        request.setQuantity(quantity);
+        return request;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.CreateItemRequest;
+import com.example.demo.services.CatalogueService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the catalogue of a real database with cursors and page numbers, and checks that the catalogue
+ * version only moves when an item is written.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:item-catalogue;DB_CLOSE_DELAY=-1",
+        "item.max-page-size=3"})
+public class ItemCatalogueTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private ItemController itemController;
+
+    @Autowired
+    private CatalogueService catalogueService;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void cursorPagesCoverTheCatalogueInOrder() {
+        // setup
+        fixtures.createItem("pear", "3.00");
+        fixtures.createItem("apple", "1.00");
+        fixtures.createItem("fig: dried", "5.00");
+        fixtures.createItem("apple", "2.00");
+        fixtures.createItem("kiwi", "1.00");
+        List<String> expected = new ArrayList<>();
+        for (Item item : itemRepository.findAll(org.springframework.data.domain.Sort.by("name", "id"))) {
+            expected.add(item.getName() + "@" + item.getPrice());
+        }
+
+        // execute
+        List<String> byName = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            ResponseEntity<List<Item>> responseEntity = itemController.getItems(null, 100, after, "name", null);
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertTrue(responseEntity.getBody().size() <= 3);
+            for (Item item : responseEntity.getBody()) {
+                byName.add(item.getName() + "@" + item.getPrice());
+            }
+            after = nextParam(responseEntity, "after");
+            pages++;
+        } while (after != null);
+
+        // compare
+        Assert.assertEquals(expected, byName);
+        Assert.assertEquals((expected.size() + 2) / 3, pages);
+    }
+
+    @Test
+    public void numberedPagesSortByPrice() {
+        // setup
+        fixtures.createItem("cheap", "0.01");
+        fixtures.createItem("dear", "999.00");
+
+        // execute
+        List<BigDecimal> prices = new ArrayList<>();
+        String page = "0";
+        while (page != null) {
+            ResponseEntity<List<Item>> responseEntity = itemController.getItems(Integer.valueOf(page), 2, null,
+                    "price", null);
+            for (Item item : responseEntity.getBody()) {
+                prices.add(item.getPrice());
+            }
+            page = nextParam(responseEntity, "page");
+        }
+
+        // compare
+        Assert.assertEquals(itemRepository.count(), prices.size());
+        Assert.assertEquals(new BigDecimal("0.01"), prices.get(0));
+        Assert.assertEquals(new BigDecimal("999.00"), prices.get(prices.size() - 1));
+        for (int i = 1; i < prices.size(); i++) {
+            Assert.assertTrue(prices.get(i - 1).compareTo(prices.get(i)) <= 0);
+        }
+    }
+
+    @Test
+    public void versionChangesOnlyWhenItemsAreWritten() {
+        // setup
+        fixtures.createItem("salt", "0.50");
+        String etag = itemController.getItems(null, null, null, "id", null).getHeaders().getETag();
+
+        // execute
+        ResponseEntity<List<Item>> unchanged = itemController.getItems(null, null, null, "id", etag);
+        CreateItemRequest request = new CreateItemRequest();
+        request.setName("pepper");
+        request.setPrice(new BigDecimal("0.70"));
+        request.setDescription("pepper");
+        itemController.createItem(request);
+        ResponseEntity<List<Item>> created = itemController.getItems(null, null, null, "id", etag);
+        Item pepper = itemRepository.findByName("pepper").get(0);
+        pepper.setDescription("black pepper");
+        itemRepository.save(pepper);
+        ResponseEntity<List<Item>> modified = itemController.getItems(null, null, null, "id",
+                created.getHeaders().getETag());
+
+        // compare
+        Assert.assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+        Assert.assertEquals(HttpStatus.OK, created.getStatusCode());
+        Assert.assertNotEquals(etag, created.getHeaders().getETag());
+        Assert.assertEquals(HttpStatus.OK, modified.getStatusCode());
+        Assert.assertNotEquals(created.getHeaders().getETag(), modified.getHeaders().getETag());
+        Assert.assertEquals("\"" + catalogueService.getVersion() + "\"", modified.getHeaders().getETag());
+    }
+
+    /**
+     * Another instance writing an item moves the version in the shared row, which this one reports once it has
+     * polled the row.
+     */
+    @Test
+    public void versionIsSharedThroughTheDatabase() {
+        // setup
+        fixtures.createItem("sugar", "1.10");
+        String etag = itemController.getItems(null, null, null, "id", null).getHeaders().getETag();
+
+        // execute
+        jdbcTemplate.update("UPDATE catalogue_version SET version = version + 1 WHERE id = 1");
+        catalogueService.refreshVersion();
+        ResponseEntity<List<Item>> changed = itemController.getItems(null, null, null, "id", etag);
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, changed.getStatusCode());
+        Assert.assertNotEquals(etag, changed.getHeaders().getETag());
+    }
+
+    @Test
+    public void malformedCursorIsRejected() {
+        // execute
+        ResponseEntity<List<Item>> notBase64 = itemController.getItems(null, null, "%%%", "id", null);
+        ResponseEntity<List<Item>> wrongSort = itemController.getItems(null, null, "MTphcHBsZQ", "id", null);
+        ResponseEntity<List<Item>> pageAndCursor = itemController.getItems(1, null, "MQ", "id", null);
+
+        // compare
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, notBase64.getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, wrongSort.getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, pageAndCursor.getStatusCode());
+    }
+
+    private String nextParam(ResponseEntity<List<Item>> responseEntity, String param) {
+        String link = responseEntity.getHeaders().getFirst(HttpHeaders.LINK);
+        if (link == null) {
+            return null;
+        }
+        Assert.assertTrue(link.endsWith(">; rel=\"next\""));
+        String uri = link.substring(1, link.indexOf('>'));
+        List<String> values = UriComponentsBuilder.fromUriString(uri).build().getQueryParams().get(param);
+        Assert.assertEquals(1, values.size());
+        return values.get(0);
+    }
+}
@@ -3,6 +3,8 @@ package com.example.demo.controllers;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.requests.CreateItemRequest;
+import com.example.demo.services.CatalogueService;
+import com.example.demo.services.ItemCatalogue;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,6 +12,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -28,6 +31,12 @@ public class ItemControllerTest {
     @Mock
     private ItemRepository itemRepository;
 
+    @Mock
+    private CatalogueService catalogueService;
+
+    @Mock
+    private ItemCatalogue itemCatalogue;
+
     @Test
     public void createItem() {
         // setup
@@ -43,7 +52,7 @@ public class ItemControllerTest {
         Assert.assertNotNull(responseEntity);
         Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         Assert.assertEquals("rice", responseEntity.getBody().getName());
-        Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().getPrice());
+        Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().getPrice());
         Assert.assertEquals("rice", responseEntity.getBody().getDescription());
     }
 
@@ -65,34 +74,134 @@ public class ItemControllerTest {
             itemList.add(item1);
             itemList.add(item2);
 
-            Mockito.doReturn(itemList).when(itemRepository).findAll();
+            Mockito.doReturn(7L).when(catalogueService).getVersion();
+            Mockito.doReturn(new CatalogueService.Page(itemList, 50, null, null)).when(catalogueService)
+                    .findPageAfter(CatalogueService.Sort.ID, null, null);
 
             // execute
-            ResponseEntity<List<Item>> responseEntity = itemController.getItems();
+            ResponseEntity<List<Item>> responseEntity = itemController.getItems(null, null, null, "id", null);
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals("\"7\"", responseEntity.getHeaders().getETag());
+            Assert.assertNull(responseEntity.getHeaders().getFirst(HttpHeaders.LINK));
             Assert.assertEquals(1, responseEntity.getBody().get(0).getId().longValue());
             Assert.assertEquals("rice", responseEntity.getBody().get(0).getName());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().get(0).getPrice());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().get(0).getPrice());
             Assert.assertEquals("rice", responseEntity.getBody().get(0).getDescription());
             Assert.assertEquals(2, responseEntity.getBody().get(1).getId().longValue());
             Assert.assertEquals("bread", responseEntity.getBody().get(1).getName());
-            Assert.assertEquals(BigDecimal.valueOf(10), responseEntity.getBody().get(1).getPrice());
+            Assert.assertEquals(new BigDecimal("10.00"), responseEntity.getBody().get(1).getPrice());
             Assert.assertEquals("bread", responseEntity.getBody().get(1).getDescription());
         } catch (Exception ex) {
             throw ex;
         }
     }
 
+    @Test
+    public void findItemsNextPageLink() {
+        try {
+            // setup
+            List<Item> itemList = new ArrayList<>();
+            itemList.add(createTestItem().get());
+
+            Mockito.doReturn(7L).when(catalogueService).getVersion();
+            Mockito.doReturn(new CatalogueService.Page(itemList, 1, 3, null)).when(catalogueService)
+                    .findPage(CatalogueService.Sort.PRICE, 2, 1);
+
+            // execute
+            ResponseEntity<List<Item>> responseEntity = itemController.getItems(2, 1, null, "price", null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals("</api/item?sort=price&size=1&page=3>; rel=\"next\"",
+                    responseEntity.getHeaders().getFirst(HttpHeaders.LINK));
+            Assert.assertEquals(1, responseEntity.getBody().size());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void findItemsNotModified() {
+        try {
+            // setup
+            Mockito.doReturn(7L).when(catalogueService).getVersion();
+
+            // execute
+            ResponseEntity<List<Item>> responseEntity = itemController.getItems(null, null, null, "name",
+                    "W/\"6\", \"7\"");
+
+            // compare
+            Assert.assertEquals(HttpStatus.NOT_MODIFIED, responseEntity.getStatusCode());
+            Assert.assertEquals("\"7\"", responseEntity.getHeaders().getETag());
+            Assert.assertNull(responseEntity.getBody());
+            Mockito.verify(catalogueService).getVersion();
+            Mockito.verifyNoMoreInteractions(catalogueService);
+            Mockito.verifyZeroInteractions(itemRepository);
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void findItemsInvalidSort() {
+        try {
+            // execute
+            ResponseEntity<List<Item>> responseEntity = itemController.getItems(null, null, null, "weight", null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void searchItemsNextPageLink() {
+        try {
+            // setup
+            List<Item> itemList = new ArrayList<>();
+            itemList.add(createTestItem().get());
+
+            Mockito.doReturn(new CatalogueService.Page(itemList, 1, 1, null)).when(catalogueService)
+                    .search("rice & beans", 0, 1);
+
+            // execute
+            ResponseEntity<List<Item>> responseEntity = itemController.searchItems("rice & beans", 0, 1);
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals("</api/item/search?q=rice%20%26%20beans&size=1&page=1>; rel=\"next\"",
+                    responseEntity.getHeaders().getFirst(HttpHeaders.LINK));
+            Assert.assertEquals("rice", responseEntity.getBody().get(0).getName());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void searchItemsInvalidPage() {
+        try {
+            // execute
+            ResponseEntity<List<Item>> responseEntity = itemController.searchItems("rice", -1, null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+            Mockito.verifyZeroInteractions(catalogueService);
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
     @Test
     public void findItemById() {
         try {
             // setup
             Optional<Item> item = createTestItem();
 
-            Mockito.doReturn(item).when(itemRepository).findById(1L);
+            Mockito.doReturn(item).when(itemCatalogue).findById(1L);
 
             // execute
             ResponseEntity<Item> responseEntity = itemController.getItemById(item.get().getId());
@@ -102,7 +211,7 @@ public class ItemControllerTest {
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
             Assert.assertEquals(1, responseEntity.getBody().getId().longValue());
             Assert.assertEquals("rice", responseEntity.getBody().getName());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().getPrice());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().getPrice());
             Assert.assertEquals("rice", responseEntity.getBody().getDescription());
         } catch (Exception ex) {
             throw ex;
@@ -115,7 +224,7 @@ public class ItemControllerTest {
             // setup
             Optional<Item> item = createTestItem();
 
-            Mockito.doReturn(null).when(itemRepository).findById(0L);
+            Mockito.doReturn(null).when(itemCatalogue).findById(0L);
 
             // execute
             ResponseEntity<Item> responseEntity = itemController.getItemById(item.get().getId());
@@ -140,7 +249,7 @@ public class ItemControllerTest {
             item.setDescription("rice");
             itemList.add(item);
 
-            Mockito.doReturn(itemList).when(itemRepository).findByName("rice");
+            Mockito.doReturn(itemList).when(itemCatalogue).findByName("rice");
 
             // execute
             ResponseEntity<List<Item>> responseEntity = itemController.getItemsByName(item.getName());
@@ -150,7 +259,7 @@ public class ItemControllerTest {
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
             Assert.assertEquals(1, responseEntity.getBody().get(0).getId().longValue());
             Assert.assertEquals("rice", responseEntity.getBody().get(0).getName());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().get(0).getPrice());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().get(0).getPrice());
             Assert.assertEquals("rice", responseEntity.getBody().get(0).getDescription());
         } catch (Exception ex) {
             throw ex;
@@ -169,7 +278,7 @@ public class ItemControllerTest {
             item.setDescription("rice");
             itemList.add(item);
 
-            Mockito.doReturn(new ArrayList<Item>()).when(itemRepository).findByName("rice1");
+            Mockito.doReturn(new ArrayList<Item>()).when(itemCatalogue).findByName("rice1");
 
             // execute
             ResponseEntity<List<Item>> responseEntity = itemController.getItemsByName(item.getName());
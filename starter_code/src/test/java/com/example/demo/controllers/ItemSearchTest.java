@@ -0,0 +1,137 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.services.ItemSearchIndex;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Searches the items of a real database through the in-memory index, as it is loaded at startup and as items are
+ * written afterwards.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:integration;DB_CLOSE_DELAY=-1")
+public class ItemSearchTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private ItemController itemController;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Test
+    public void searchMatchesPrefixesOfEveryWord() {
+        // setup
+        fixtures.createItem("Crème Brûlée", "Vanilla custard under burnt sugar", "1.00");
+        fixtures.createItem("Burnt Toast", "Sourdough toast", "1.00");
+        fixtures.createItem("Vanilla Pod", "Madagascan vanilla", "1.00");
+
+        // execute
+        List<String> burnt = names(itemController.searchItems("BURN", 0, null));
+        List<String> creme = names(itemController.searchItems("creme brul", 0, null));
+        List<String> both = names(itemController.searchItems("vanil sugar", 0, null));
+        List<String> none = names(itemController.searchItems("vanilla toast", 0, null));
+        List<String> shortPrefix = names(itemController.searchItems("b", 0, null));
+
+        // compare
+        Assert.assertEquals(Arrays.asList("Burnt Toast", "Crème Brûlée"), burnt);
+        Assert.assertEquals(Collections.singletonList("Crème Brûlée"), creme);
+        Assert.assertEquals(Collections.singletonList("Crème Brûlée"), both);
+        Assert.assertTrue(none.isEmpty());
+        Assert.assertTrue(shortPrefix.isEmpty());
+    }
+
+    @Test
+    public void resultsAreRankedAndPaged() {
+        // setup
+        Item description = fixtures.createItem("Soup", "parsnip soup", "1.00");
+        Item name = fixtures.createItem("Parsnip", "root vegetable", "1.00");
+        Item prefix = fixtures.createItem("Parsnips", "a bag of parsnips", "1.00");
+        Item tie = fixtures.createItem("Roasted Parsnip", "root vegetable", "1.00");
+
+        // execute
+        ResponseEntity<List<Item>> first = itemController.searchItems("parsnip", 0, 3);
+        String link = first.getHeaders().getFirst(HttpHeaders.LINK);
+        ResponseEntity<List<Item>> second = itemController.searchItems("parsnip", 1, 3);
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, first.getStatusCode());
+        List<Item> ranked = new ArrayList<>(first.getBody());
+        ranked.addAll(second.getBody());
+        Assert.assertEquals(Arrays.asList(name.getId(), tie.getId(), prefix.getId(), description.getId()), ids(ranked));
+        Assert.assertEquals("</api/item/search?q=parsnip&size=3&page=1>; rel=\"next\"", link);
+        Assert.assertNull(second.getHeaders().getFirst(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void indexFollowsCommittedWrites() {
+        // setup
+        Item item = fixtures.createItem("Quince Paste", "membrillo", "1.00");
+
+        // execute
+        List<String> created = names(itemController.searchItems("membrillo", 0, null));
+        item.setDescription("dulce de membrillo");
+        item.setName("Quince Cheese");
+        itemRepository.save(item);
+        List<String> oldName = names(itemController.searchItems("quince paste", 0, null));
+        List<String> newName = names(itemController.searchItems("quince chee dulce", 0, null));
+        itemRepository.delete(item);
+        List<String> deleted = names(itemController.searchItems("quince", 0, null));
+
+        // compare
+        Assert.assertEquals(Collections.singletonList("Quince Paste"), created);
+        Assert.assertTrue(oldName.isEmpty());
+        Assert.assertEquals(Collections.singletonList("Quince Cheese"), newName);
+        Assert.assertTrue(deleted.isEmpty());
+    }
+
+    @Test
+    public void loadIndexesStoredItems() {
+        // setup
+        fixtures.createItem("Damson Jam", "damson preserve", "1.00");
+
+        // execute
+        itemSearchIndex.load();
+
+        // compare
+        Assert.assertEquals(Collections.singletonList("Damson Jam"),
+                names(itemController.searchItems("dams jam", 0, null)));
+    }
+
+    private List<String> names(ResponseEntity<List<Item>> responseEntity) {
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        List<String> names = new ArrayList<>();
+        for (Item item : responseEntity.getBody()) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+
+    private List<Long> ids(List<Item> items) {
+        List<Long> ids = new ArrayList<>();
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
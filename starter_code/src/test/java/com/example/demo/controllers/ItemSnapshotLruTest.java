@@ -0,0 +1,78 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.services.ItemCatalogue;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+
+/**
+ * Grows the catalogue of a real database past {@code catalogue.snapshot.max-items} and checks that lookups by id
+ * fall back to the bounded LRU without serving stale items.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:item-snapshot-lru;DB_CLOSE_DELAY=-1",
+        "catalogue.snapshot.max-items=2",
+        "catalogue.lru.max-size=2"})
+public class ItemSnapshotLruTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private ItemController itemController;
+
+    @Autowired
+    private ItemCatalogue itemCatalogue;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void largeCatalogueIsCachedInTheLru() {
+        // setup
+        Item rye = fixtures.createItem("rye", "2.00");
+        fixtures.createItem("millet", "2.10");
+        fixtures.createItem("quinoa", "4.00");
+        itemCatalogue.load();
+        double hitsBefore = hits();
+        double missesBefore = misses();
+
+        // execute
+        itemController.getItemById(rye.getId());
+        itemController.getItemById(rye.getId());
+        rye.setPrice(new BigDecimal("2.20"));
+        itemRepository.save(rye);
+        ResponseEntity<Item> updated = itemController.getItemById(rye.getId());
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, updated.getStatusCode());
+        Assert.assertEquals(new BigDecimal("2.20"), updated.getBody().getPrice());
+        Assert.assertEquals(hitsBefore + 1, hits(), 0);
+        Assert.assertEquals(missesBefore + 2, misses(), 0);
+        Assert.assertTrue(itemCatalogue.size() <= 2);
+        Assert.assertEquals(HttpStatus.OK, itemController.getItemsByName("quinoa").getStatusCode());
+    }
+
+    private double hits() {
+        return meterRegistry.get("item.catalogue.hits").functionCounter().count();
+    }
+
+    private double misses() {
+        return meterRegistry.get("item.catalogue.misses").functionCounter().count();
+    }
+}
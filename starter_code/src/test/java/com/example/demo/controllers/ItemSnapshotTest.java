@@ -0,0 +1,144 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.CreateItemRequest;
+import com.example.demo.services.ItemCatalogue;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Looks items up in the catalogue snapshot of a real database and checks that committed writes, and only those,
+ * are visible to the lookups.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:integration;DB_CLOSE_DELAY=-1")
+public class ItemSnapshotTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private ItemController itemController;
+
+    @Autowired
+    private ItemCatalogue itemCatalogue;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void createdItemIsServedFromTheSnapshot() {
+        // setup
+        CreateItemRequest request = new CreateItemRequest();
+        request.setName("lentils");
+        request.setPrice(new BigDecimal("2.40"));
+        request.setDescription("red lentils");
+        long id = itemController.createItem(request).getBody().getId();
+        double hitsBefore = meterRegistry.get("item.catalogue.hits").functionCounter().count();
+
+        // execute
+        ResponseEntity<Item> byId = itemController.getItemById(id);
+        ResponseEntity<List<Item>> byName = itemController.getItemsByName("lentils");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, byId.getStatusCode());
+        Assert.assertEquals(new BigDecimal("2.40"), byId.getBody().getPrice());
+        Assert.assertEquals("red lentils", byId.getBody().getDescription());
+        Assert.assertEquals(HttpStatus.OK, byName.getStatusCode());
+        Assert.assertEquals(1, byName.getBody().size());
+        Assert.assertEquals(id, byName.getBody().get(0).getId().longValue());
+        Assert.assertEquals(hitsBefore + 2, meterRegistry.get("item.catalogue.hits").functionCounter().count(), 0);
+        Assert.assertEquals(itemRepository.count(), itemCatalogue.size());
+    }
+
+    @Test
+    public void updatesAndDeletesAreVisibleOnceCommitted() {
+        // setup
+        Item oats = fixtures.createItem("oats", "1.10");
+
+        // execute
+        oats.setName("rolled oats");
+        oats.setPrice(new BigDecimal("1.30"));
+        itemRepository.save(oats);
+        ResponseEntity<Item> renamed = itemController.getItemById(oats.getId());
+        ResponseEntity<List<Item>> oldName = itemController.getItemsByName("oats");
+        ResponseEntity<List<Item>> newName = itemController.getItemsByName("rolled oats");
+        itemRepository.delete(oats);
+        ResponseEntity<Item> deleted = itemController.getItemById(oats.getId());
+
+        // compare
+        Assert.assertEquals(new BigDecimal("1.30"), renamed.getBody().getPrice());
+        Assert.assertEquals("rolled oats", renamed.getBody().getName());
+        Assert.assertEquals(HttpStatus.NOT_FOUND, oldName.getStatusCode());
+        Assert.assertEquals(HttpStatus.OK, newName.getStatusCode());
+        Assert.assertEquals(HttpStatus.NOT_FOUND, deleted.getStatusCode());
+    }
+
+    @Test
+    public void renamingOneOfTwoNamesakesKeepsTheOther() {
+        // setup
+        Item first = fixtures.createItem("millet", "0.80");
+        Item second = fixtures.createItem("millet", "0.85");
+        Item third = fixtures.createItem("millet", "0.90");
+
+        // execute
+        second.setName("pearl millet");
+        itemRepository.save(second);
+        ResponseEntity<List<Item>> oldName = itemController.getItemsByName("millet");
+        ResponseEntity<List<Item>> newName = itemController.getItemsByName("pearl millet");
+
+        // compare
+        Assert.assertEquals(Arrays.asList(first.getId(), third.getId()), ids(oldName.getBody()));
+        Assert.assertEquals(Collections.singletonList(second.getId()), ids(newName.getBody()));
+    }
+
+    @Test
+    public void rolledBackWritesAreNotApplied() {
+        // setup
+        Item barley = fixtures.createItem("barley", "0.90");
+
+        // execute
+        Long created = transactionTemplate.execute(status -> {
+            Item item = fixtures.createItem("spelt", "1.50");
+            Item changed = itemRepository.findById(barley.getId()).get();
+            changed.setPrice(new BigDecimal("9.90"));
+            itemRepository.save(changed);
+            status.setRollbackOnly();
+            return item.getId();
+        });
+
+        // compare
+        Assert.assertEquals(HttpStatus.NOT_FOUND, itemController.getItemById(created).getStatusCode());
+        Assert.assertEquals(new BigDecimal("0.90"), itemController.getItemById(barley.getId()).getBody().getPrice());
+    }
+
+    private List<Long> ids(List<Item> items) {
+        List<Long> ids = new ArrayList<>();
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
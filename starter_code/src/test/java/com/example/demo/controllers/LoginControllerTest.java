@@ -0,0 +1,155 @@
+package com.example.demo.controllers;
+
+import com.example.demo.configuration.JwtTokenProvider;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.requests.LoginRequest;
+import com.example.demo.model.requests.RefreshTokenRequest;
+import com.example.demo.services.CustomUserDetails;
+import com.example.demo.services.CustomUserService;
+import com.example.demo.services.IssuedRefreshToken;
+import com.example.demo.services.LoginRateLimiter;
+import com.example.demo.services.PasswordHashingService;
+import com.example.demo.services.RefreshTokenService;
+import com.example.demo.services.RetryLaterException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class LoginControllerTest {
+    @InjectMocks
+    private LoginController loginController;
+
+    @Mock
+    private PasswordHashingService passwordHashingService;
+
+    @Mock
+    private JwtTokenProvider tokenProvider;
+
+    @Mock
+    private LoginRateLimiter loginRateLimiter;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private CustomUserService customUserService;
+
+    private final AtomicInteger executorTasks = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(loginController, "taskExecutor", (Executor) task -> {
+            executorTasks.incrementAndGet();
+            task.run();
+        });
+    }
+
+    @Test
+    public void login() {
+        // setup
+        User user = new User();
+        user.setId(1);
+        user.setUsername("khanh");
+        CustomUserDetails userDetails = new CustomUserDetails(user);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+
+        Mockito.doReturn(CompletableFuture.completedFuture(authentication)).when(passwordHashingService).authenticate(Mockito.any());
+        Mockito.doReturn("abc").when(tokenProvider).generateToken(userDetails);
+        Mockito.doReturn(new IssuedRefreshToken("refresh1", 1, "khanh")).when(refreshTokenService).issue(1, "khanh");
+
+        // execute
+        ResponseEntity<?> responseEntity = loginController.login(new LoginRequest("khanh", "khanh123"), new MockHttpServletRequest()).join();
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        Assert.assertEquals("Bearer abc", responseEntity.getHeaders().getFirst("Authorization"));
+        Assert.assertEquals("refresh1", responseEntity.getHeaders().getFirst(LoginController.REFRESH_TOKEN_HEADER));
+        // the refresh token is issued on the task executor, not on the hashing pool
+        Assert.assertEquals(1, executorTasks.get());
+    }
+
+    @Test
+    public void refresh() {
+        // setup
+        IssuedRefreshToken refreshToken = new IssuedRefreshToken("refresh2", 1, "khanh");
+        CustomUserDetails userDetails = new CustomUserDetails(refreshToken.toUser());
+        Mockito.doReturn(refreshToken).when(refreshTokenService).rotate("refresh1");
+        Mockito.doReturn(userDetails).when(customUserService).createUserDetails(Mockito.any());
+        Mockito.doReturn("abc").when(tokenProvider).generateToken(userDetails);
+
+        // execute
+        ResponseEntity<?> responseEntity = loginController.refresh(new RefreshTokenRequest("refresh1"));
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        Assert.assertEquals("Bearer abc", responseEntity.getHeaders().getFirst("Authorization"));
+        Assert.assertEquals("refresh2", responseEntity.getHeaders().getFirst(LoginController.REFRESH_TOKEN_HEADER));
+        Mockito.verifyZeroInteractions(passwordHashingService);
+    }
+
+    @Test
+    public void refreshRejected() {
+        // setup
+        Mockito.doReturn(null).when(refreshTokenService).rotate("revoked");
+
+        // execute
+        ResponseEntity<?> responseEntity = loginController.refresh(new RefreshTokenRequest("revoked"));
+
+        // compare
+        Assert.assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        Mockito.verifyZeroInteractions(tokenProvider);
+    }
+
+    @Test
+    public void loginBadCredentials() {
+        // setup
+        CompletableFuture<Authentication> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new BadCredentialsException("Bad credentials"));
+        Mockito.doReturn(failed).when(passwordHashingService).authenticate(Mockito.any());
+
+        // execute
+        ResponseEntity<?> responseEntity = loginController.login(new LoginRequest("khanh", "wrong"), new MockHttpServletRequest()).join();
+
+        // compare
+        Assert.assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        Assert.assertEquals("Login failed", responseEntity.getBody());
+    }
+
+    @Test
+    public void loginRateLimited() {
+        // setup
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        Mockito.doThrow(new RetryLaterException(HttpStatus.TOO_MANY_REQUESTS, 12, "Too many login attempts, please retry later"))
+                .when(loginRateLimiter).acquire("khanh", request.getRemoteAddr());
+
+        // execute
+        try {
+            loginController.login(new LoginRequest("khanh", "khanh123"), request);
+            Assert.fail("expected the attempt to be rejected");
+        } catch (RetryLaterException ex) {
+            // compare
+            Assert.assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+            Assert.assertEquals(12, ex.getRetryAfterSeconds());
+        }
+        Mockito.verifyZeroInteractions(passwordHashingService);
+    }
+}
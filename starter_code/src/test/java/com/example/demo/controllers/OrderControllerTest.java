@@ -3,25 +3,39 @@ package com.example.demo.controllers;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.UserOrder;
-import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.OrderRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.persistence.UserOrderSummary;
+import com.example.demo.model.responses.OrderLineResponse;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.model.responses.OrderStatusResponse;
+import com.example.demo.model.responses.OrderSummaryResponse;
+import com.example.demo.services.CartService;
+import com.example.demo.services.IdempotencyService;
+import com.example.demo.services.OrderHistoryService;
+import com.example.demo.services.OrderService;
+import com.example.demo.services.OrderSubmissionPipeline;
+import com.example.demo.services.OrderSummaryService;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSnapshot;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -30,13 +44,30 @@ public class OrderControllerTest {
     private OrderController orderController;
 
     @Mock
-    private UserRepository userRepository;
+    private UserCache userCache;
 
     @Mock
-    private OrderRepository orderRepository;
+    private OrderService orderService;
 
     @Mock
-    private CartRepository cartRepository;
+    private CartService cartService;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private OrderHistoryService orderHistoryService;
+
+    @Mock
+    private OrderSubmissionPipeline orderSubmissionPipeline;
+
+    @Mock
+    private OrderSummaryService orderSummaryService;
+
+    @Before
+    public void setUp() {
+        stubIdempotency();
+    }
 
     @Test
     public void createOrder() {
@@ -45,29 +76,28 @@ public class OrderControllerTest {
             User user = new User();
             user.setUsername("khanh");
             Optional<Item> item = createTestItem();
-            List<Item> itemList = new ArrayList<>();
-            itemList.add(item.get());
             Cart cart = new Cart();
             cart.setId(1L);
             cart.setUser(user);
-            cart.setItems(itemList);
-            cart.setTotal(BigDecimal.valueOf(5));
+            cart.addItem(item.get());
             user.setCart(cart);
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(OrderResponse.of(7L, cart)).when(orderService).placeOrder(cart);
+            stubCheckout(cart);
             // execute
-            ResponseEntity<UserOrder> responseEntity = orderController.submit("khanh");
+            ResponseEntity<OrderResponse> responseEntity = orderController.submit("khanh", null);
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-            Assert.assertEquals(1, responseEntity.getBody().getItems().size());
-            Assert.assertEquals(1, responseEntity.getBody().getItems().get(0).getId().longValue());
-            Assert.assertEquals("rice", responseEntity.getBody().getItems().get(0).getName());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().getItems().get(0).getPrice());
-            Assert.assertEquals("rice", responseEntity.getBody().getItems().get(0).getDescription());
-            Assert.assertEquals("khanh", responseEntity.getBody().getUser().getUsername());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().getTotal());
+            Assert.assertEquals(7, responseEntity.getBody().getId());
+            Assert.assertEquals(1, responseEntity.getBody().getLines().size());
+            Assert.assertEquals(1, responseEntity.getBody().getLines().get(0).getItemId());
+            Assert.assertEquals("rice", responseEntity.getBody().getLines().get(0).getName());
+            Assert.assertEquals(1, responseEntity.getBody().getLines().get(0).getQuantity());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().getLines().get(0).getUnitPrice());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().getTotal());
         } catch (Exception ex) {
             throw ex;
         }
@@ -76,9 +106,9 @@ public class OrderControllerTest {
     @Test
     public void createOrderNotFoundUser() {
         try {
-            Mockito.doReturn(null).when(userRepository).findByUsername("khanh1");
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh1");
             // execute
-            ResponseEntity<UserOrder> responseEntity = orderController.submit("khanh1");
+            ResponseEntity<OrderResponse> responseEntity = orderController.submit("khanh1", null);
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -88,39 +118,166 @@ public class OrderControllerTest {
         }
     }
 
+    @Test
+    public void submitAsyncQueuesOrder() {
+        try {
+            // setup
+            User user = new User();
+            user.setUsername("khanh");
+            Cart cart = new Cart();
+            cart.setId(1L);
+            user.setCart(cart);
+            OrderStatusResponse queued = new OrderStatusResponse(11L, OrderStatusResponse.Status.QUEUED, null, null);
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(Optional.of(queued)).when(orderSubmissionPipeline).enqueue("khanh", 1L);
+            // execute
+            ResponseEntity<OrderStatusResponse> responseEntity = orderController.submitAsync("khanh", null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.ACCEPTED, responseEntity.getStatusCode());
+            Assert.assertEquals("/api/order/status/khanh/11", responseEntity.getHeaders().getLocation().toString());
+            Assert.assertSame(queued, responseEntity.getBody());
+            Mockito.verify(cartService, Mockito.never()).checkout(Mockito.anyLong(), Mockito.any());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void submitAsyncFallsBackToSynchronousOrder() {
+        try {
+            // setup
+            User user = new User();
+            user.setUsername("khanh");
+            Cart cart = new Cart();
+            cart.setId(1L);
+            cart.setUser(user);
+            cart.addItem(createTestItem().get());
+            user.setCart(cart);
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(Optional.empty()).when(orderSubmissionPipeline).enqueue("khanh", 1L);
+            Mockito.doReturn(OrderResponse.of(7L, cart)).when(orderService).placeOrder(cart);
+            Mockito.doAnswer(invocation -> new OrderStatusResponse(7L, OrderStatusResponse.Status.COMPLETED,
+                    invocation.getArgument(2), null))
+                    .when(orderSubmissionPipeline).completed(Mockito.eq("khanh"), Mockito.eq(1L), Mockito.any());
+            stubCheckout(cart);
+            // execute
+            ResponseEntity<OrderStatusResponse> responseEntity = orderController.submitAsync("khanh", null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals(OrderStatusResponse.Status.COMPLETED, responseEntity.getBody().getStatus());
+            Assert.assertEquals(7, responseEntity.getBody().getOrder().getId());
+            Assert.assertEquals(new BigDecimal("5.00"), responseEntity.getBody().getOrder().getTotal());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void getStatusNotFound() {
+        try {
+            // setup
+            Mockito.doReturn(null).when(orderSubmissionPipeline).getStatus("khanh", 13L);
+            // execute
+            ResponseEntity<OrderStatusResponse> responseEntity = orderController.getStatus("khanh", 13L);
+
+            // compare
+            Assert.assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void getSummary() {
+        try {
+            // setup
+            User user = new User();
+            user.setId(3L);
+            user.setUsername("khanh");
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(new UserOrderSummary(3L, 4, 12345, 1600000000000L))
+                    .when(orderSummaryService).findByUserId(3L);
+            // execute
+            ResponseEntity<OrderSummaryResponse> responseEntity = orderController.getSummary("khanh");
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals(4, responseEntity.getBody().getOrderCount());
+            Assert.assertEquals(new BigDecimal("123.45"), responseEntity.getBody().getTotalSpent());
+            Assert.assertEquals(Long.valueOf(1600000000000L), responseEntity.getBody().getLastOrderAt());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void getSummaryNotFoundUser() {
+        try {
+            // setup
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh1");
+            // execute
+            ResponseEntity<OrderSummaryResponse> responseEntity = orderController.getSummary("khanh1");
+
+            // compare
+            Assert.assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
     @Test
     public void getHistory() {
         try {
             // setup
             User user = new User();
+            user.setId(3L);
             user.setUsername("khanh");
-            Optional<Item> item = createTestItem();
-            List<Item> itemList = new ArrayList<>();
-            itemList.add(item.get());
-            List<UserOrder> userOrderList = new ArrayList<>();
-            UserOrder userOrder = new UserOrder();
-            userOrder.setId(1L);
-            userOrder.setUser(user);
-            userOrder.setTotal(BigDecimal.valueOf(5));
-            userOrder.setItems(itemList);
-            userOrderList.add(userOrder);
-
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
-            Mockito.doReturn(userOrderList).when(orderRepository).findByUser(user);
+            List<OrderResponse> orders = Arrays.asList(
+                    new OrderResponse(1L, Collections.singletonList(
+                            new OrderLineResponse(1L, "rice", 2, new BigDecimal("5.00"))), new BigDecimal("10.00")),
+                    new OrderResponse(2L, Collections.emptyList(), new BigDecimal("0.00")));
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(new OrderHistoryService.Page(orders, 2, null))
+                    .when(orderHistoryService).findPage(3L, 0L, 2);
             // execute
-            ResponseEntity<List<UserOrder>> responseEntity = orderController.getOrdersForUser("khanh");
+            ResponseEntity<List<OrderResponse>> responseEntity = orderController.getOrdersForUser("khanh", 0L, 2);
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-            Assert.assertEquals(1, responseEntity.getBody().size());
-            Assert.assertEquals(1, responseEntity.getBody().get(0).getId().longValue());
-            Assert.assertEquals(1, responseEntity.getBody().get(0).getItems().get(0).getId().longValue());
-            Assert.assertEquals("rice", responseEntity.getBody().get(0).getItems().get(0).getName());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().get(0).getItems().get(0).getPrice());
-            Assert.assertEquals("rice", responseEntity.getBody().get(0).getItems().get(0).getDescription());
-            Assert.assertEquals("khanh", responseEntity.getBody().get(0).getUser().getUsername());
-            Assert.assertEquals(BigDecimal.valueOf(5), responseEntity.getBody().get(0).getTotal());
+            Assert.assertEquals(orders, responseEntity.getBody());
+            Assert.assertNull(responseEntity.getHeaders().getFirst(HttpHeaders.LINK));
+        } catch (Exception ex) {
+            throw ex;
+        }
+    }
+
+    @Test
+    public void getHistoryLinksNextPage() {
+        try {
+            // setup
+            User user = new User();
+            user.setId(3L);
+            user.setUsername("khanh le");
+            List<OrderResponse> orders = Collections.singletonList(
+                    new OrderResponse(9L, Collections.emptyList(), new BigDecimal("0.00")));
+
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh le");
+            Mockito.doReturn(new OrderHistoryService.Page(orders, 50, 9L))
+                    .when(orderHistoryService).findPage(3L, 4L, null);
+            // execute
+            ResponseEntity<List<OrderResponse>> responseEntity = orderController.getOrdersForUser("khanh le", 4L, null);
+
+            // compare
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertEquals(orders, responseEntity.getBody());
+            Assert.assertEquals("</api/order/history/khanh%20le?after=9&limit=50>; rel=\"next\"",
+                    responseEntity.getHeaders().getFirst(HttpHeaders.LINK));
         } catch (Exception ex) {
             throw ex;
         }
@@ -130,9 +287,9 @@ public class OrderControllerTest {
     public void getHistoryNotFoundUser() {
         try {
             // setup
-            Mockito.doReturn(null).when(userRepository).findByUsername("khanh1");
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh1");
             // execute
-            ResponseEntity<List<UserOrder>> responseEntity = orderController.getOrdersForUser("khanh1");
+            ResponseEntity<List<OrderResponse>> responseEntity = orderController.getOrdersForUser("khanh1", 0L, null);
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -142,6 +299,20 @@ public class OrderControllerTest {
         }
     }
 
+    private void stubIdempotency() {
+        Mockito.doAnswer(invocation -> {
+            Supplier<?> action = invocation.getArgument(4);
+            return action.get();
+        }).when(idempotencyService).execute(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    private void stubCheckout(Cart cart) {
+        Mockito.doAnswer(invocation -> {
+            Function<Cart, ?> mutation = invocation.getArgument(1);
+            return Optional.ofNullable(mutation.apply(cart));
+        }).when(cartService).checkout(Mockito.eq(1L), Mockito.any());
+    }
+
     private Optional<Item> createTestItem() {
         Item item = new Item();
         item.setId(1L);
@@ -0,0 +1,210 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.services.CustomUserDetails;
+import com.example.demo.services.CustomUserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Exports orders placed against a real database, with a fetch size smaller than the number of orders so that the
+ * cursor is read in several round trips, and checks the NDJSON lines, the filters and the gzip encoding.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-export;DB_CLOSE_DELAY=-1",
+        "order.export.fetch-size=2",
+        "security.admin-usernames=finance,ops"})
+public class OrderExportTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private AdminController adminController;
+
+    @Autowired
+    private CartController cartController;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private CustomUserService customUserService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void exportWritesOneLinePerOrder() throws IOException {
+        // setup
+        User user = fixtures.createUser("exported");
+        Item rice = fixtures.createItem("rice", "2.50");
+        Item bean = fixtures.createItem("bean", "1.00");
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            addToCart(user, rice, i);
+            addToCart(user, bean, 1);
+            orderIds.add(submit(user).getId());
+        }
+
+        // execute
+        List<JsonNode> lines = export(orderIds.get(0), null, null, null, false);
+
+        // compare
+        Assert.assertEquals(orderIds.size(), lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            JsonNode line = lines.get(i);
+            Assert.assertEquals(orderIds.get(i).longValue(), line.get("id").asLong());
+            Assert.assertEquals(user.getId(), line.get("userId").asLong());
+            Assert.assertTrue(line.get("createdAt").isNumber());
+            Assert.assertEquals(0, new BigDecimal("2.50").multiply(BigDecimal.valueOf(i + 1)).add(BigDecimal.ONE)
+                    .compareTo(line.get("total").decimalValue()));
+            Assert.assertEquals(2, line.get("lines").size());
+            Assert.assertEquals("rice", line.get("lines").get(0).get("name").asText());
+            Assert.assertEquals(i + 1, line.get("lines").get(0).get("quantity").asInt());
+            Assert.assertEquals("bean", line.get("lines").get(1).get("name").asText());
+        }
+    }
+
+    @Test
+    public void exportFiltersByIdAndCreationTime() throws IOException {
+        // setup
+        User user = fixtures.createUser("filtered");
+        Item item = fixtures.createItem("tea", "4.00");
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            addToCart(user, item, 1);
+            orderIds.add(submit(user).getId());
+        }
+        long day = 24L * 60 * 60 * 1000;
+        for (int i = 0; i < orderIds.size(); i++) {
+            jdbcTemplate.update("UPDATE USER_ORDER SET CREATED_AT = ? WHERE ID = ?", i * day, orderIds.get(i));
+        }
+
+        // execute
+        List<JsonNode> byId = export(orderIds.get(1), orderIds.get(3), null, null, false);
+        List<JsonNode> byTime = export(orderIds.get(0), null, Instant.ofEpochMilli(day),
+                Instant.ofEpochMilli(3 * day), false);
+
+        // compare
+        Assert.assertEquals(2, byId.size());
+        Assert.assertEquals(orderIds.get(1).longValue(), byId.get(0).get("id").asLong());
+        Assert.assertEquals(orderIds.get(2).longValue(), byId.get(1).get("id").asLong());
+        Assert.assertEquals(2, byTime.size());
+        Assert.assertEquals(day, byTime.get(0).get("createdAt").asLong());
+        Assert.assertEquals(2 * day, byTime.get(1).get("createdAt").asLong());
+    }
+
+    @Test
+    public void gzipExportHasSameLines() throws IOException {
+        // setup
+        User user = fixtures.createUser("compressed");
+        Item item = fixtures.createItem("salt", "0.75");
+        long firstOrderId = 0;
+        for (int i = 0; i < 3; i++) {
+            addToCart(user, item, 2);
+            long orderId = submit(user).getId();
+            firstOrderId = i == 0 ? orderId : firstOrderId;
+        }
+
+        // execute
+        ResponseEntity<StreamingResponseBody> responseEntity =
+                adminController.exportOrders(firstOrderId, null, null, null, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(out);
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        Assert.assertEquals("gzip", responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        Assert.assertEquals(AdminController.APPLICATION_NDJSON, responseEntity.getHeaders().getContentType());
+        List<JsonNode> lines = parse(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(lines, export(firstOrderId, null, null, null, false));
+        Assert.assertEquals(3, lines.size());
+    }
+
+    @Test
+    public void configuredUsersAreAdmins() {
+        // setup
+        fixtures.createUser("finance");
+        fixtures.createUser("clerk");
+
+        // execute
+        CustomUserDetails admin = customUserService.createUserDetails(userRepository.findByUsername("finance"));
+        CustomUserDetails user = (CustomUserDetails) customUserService.loadUserByUsername("clerk");
+
+        // compare
+        Assert.assertTrue(admin.getAuthorities().contains(new SimpleGrantedAuthority(CustomUserDetails.ADMIN)));
+        Assert.assertFalse(user.getAuthorities().contains(new SimpleGrantedAuthority(CustomUserDetails.ADMIN)));
+    }
+
+    private List<JsonNode> export(Long fromId, Long toId, Instant from, Instant to, boolean gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        adminController.exportOrders(fromId, toId, from, to, gzip).getBody().writeTo(out);
+        return parse(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private List<JsonNode> parse(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        String body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        List<JsonNode> lines = new ArrayList<>();
+        if (body.isEmpty()) {
+            return lines;
+        }
+        Assert.assertTrue(body.endsWith("\n"));
+        for (String line : body.substring(0, body.length() - 1).split("\n", -1)) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private void addToCart(User user, Item item, int quantity) {
+        ModifyCartRequest request = new ModifyCartRequest();
+        request.setUsername(user.getUsername());
+        request.setItemId(item.getId());
+        request.setQuantity(quantity);
+        cartController.addTocart(request, null);
+    }
+
+    private OrderResponse submit(User user) {
+        return orderController.submit(user.getUsername(), null).getBody();
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.OrderResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Walks a user's order history page by page through the {@code Link} headers, and in streaming mode, against a
+ * real database with a page size small enough to need several pages.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-history;DB_CLOSE_DELAY=-1",
+        "order.history.page-size=2",
+        "order.history.max-page-size=3"})
+public class OrderHistoryTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private CartController cartController;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void pagesFollowTheNextLink() {
+        // setup
+        User user = fixtures.createUser("paged");
+        List<Long> orderIds = createOrders(user, 5);
+        createOrders(fixtures.createUser("paged-other"), 2);
+
+        // execute
+        List<OrderResponse> orders = new ArrayList<>();
+        long after = 0;
+        int pages = 0;
+        while (true) {
+            ResponseEntity<List<OrderResponse>> responseEntity = orderController.getOrdersForUser("paged", after, null);
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            Assert.assertTrue(responseEntity.getBody().size() <= 2);
+            orders.addAll(responseEntity.getBody());
+            pages++;
+            String link = responseEntity.getHeaders().getFirst(HttpHeaders.LINK);
+            if (link == null) {
+                break;
+            }
+            UriComponents next = UriComponentsBuilder.fromUriString(link.substring(1, link.indexOf('>'))).build();
+            Assert.assertEquals("/api/order/history/paged", next.getPath());
+            Assert.assertEquals("2", next.getQueryParams().getFirst("limit"));
+            after = Long.parseLong(next.getQueryParams().getFirst("after"));
+        }
+
+        // compare
+        Assert.assertEquals(3, pages);
+        assertHistory(orderIds, orders);
+    }
+
+    @Test
+    public void limitIsCappedAtTheMaximumPageSize() {
+        // setup
+        createOrders(fixtures.createUser("capped"), 5);
+
+        // execute
+        ResponseEntity<List<OrderResponse>> responseEntity = orderController.getOrdersForUser("capped", 0L, 1000);
+
+        // compare
+        Assert.assertEquals(3, responseEntity.getBody().size());
+        Assert.assertTrue(responseEntity.getHeaders().getFirst(HttpHeaders.LINK).contains("limit=3"));
+    }
+
+    @Test
+    public void historyKeepsNameAndPriceAtTimeOfPurchase() {
+        // setup
+        User user = fixtures.createUser("snapshot");
+        List<Long> orderIds = createOrders(user, 1);
+        Item rice = itemRepository.findById(
+                orderController.getOrdersForUser("snapshot", 0L, null).getBody().get(0).getLines().get(0).getItemId()).get();
+        rice.setName("basmati rice");
+        rice.setPrice(new BigDecimal("9.99"));
+        itemRepository.save(rice);
+
+        // execute
+        ResponseEntity<List<OrderResponse>> responseEntity = orderController.getOrdersForUser("snapshot", 0L, null);
+
+        // compare
+        assertHistory(orderIds, responseEntity.getBody());
+    }
+
+    @Test
+    public void streamWritesTheWholeHistory() throws Exception {
+        // setup
+        User user = fixtures.createUser("streamed");
+        List<Long> orderIds = createOrders(user, 7);
+        createOrders(fixtures.createUser("streamed-other"), 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // execute
+        ResponseEntity<StreamingResponseBody> responseEntity = orderController.streamOrdersForUser("streamed");
+        responseEntity.getBody().writeTo(out);
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        OrderResponse[] orders = objectMapper.readValue(out.toByteArray(), OrderResponse[].class);
+        assertHistory(orderIds, Arrays.asList(orders));
+    }
+
+    @Test
+    public void streamOfEmptyHistoryIsAnEmptyArray() throws Exception {
+        // setup
+        fixtures.createUser("no-orders");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // execute
+        orderController.streamOrdersForUser("no-orders").getBody().writeTo(out);
+
+        // compare
+        Assert.assertEquals("[]", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void streamNotFoundUser() {
+        // execute
+        ResponseEntity<StreamingResponseBody> responseEntity = orderController.streamOrdersForUser("nobody");
+
+        // compare
+        Assert.assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
+    }
+
+    private void assertHistory(List<Long> orderIds, List<OrderResponse> orders) {
+        Assert.assertEquals(orderIds.size(), orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            OrderResponse order = orders.get(i);
+            Assert.assertEquals((long) orderIds.get(i), order.getId());
+            Assert.assertEquals(2, order.getLines().size());
+            Assert.assertEquals("rice", order.getLines().get(0).getName());
+            Assert.assertEquals(i + 1, order.getLines().get(0).getQuantity());
+            Assert.assertEquals(new BigDecimal("2.50"), order.getLines().get(0).getUnitPrice());
+            Assert.assertEquals("bean", order.getLines().get(1).getName());
+            Assert.assertEquals(1, order.getLines().get(1).getQuantity());
+        }
+    }
+
+    /**
+     * Places {@code count} orders, the n-th of them with n units of rice and one bean.
+     */
+    private List<Long> createOrders(User user, int count) {
+        Item rice = fixtures.createItem("rice", "2.50");
+        Item bean = fixtures.createItem("bean", "1.00");
+        List<Long> orderIds = new ArrayList<>();
+        for (int n = 1; n <= count; n++) {
+            cartController.addTocart(createRequest(user, rice, n), null);
+            cartController.addTocart(createRequest(user, bean, 1), null);
+            orderIds.add(orderController.submit(user.getUsername(), null).getBody().getId());
+        }
+        return orderIds;
+    }
+
+    private ModifyCartRequest createRequest(User user, Item item, int quantity) {
+        ModifyCartRequest request = new ModifyCartRequest();
+        request.setUsername(user.getUsername());
+        request.setItemId(item.getId());
+        request.setQuantity(quantity);
+        return request;
+    }
+}
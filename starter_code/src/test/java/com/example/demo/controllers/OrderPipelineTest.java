@@ -0,0 +1,264 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.model.responses.OrderStatusResponse;
+import com.example.demo.services.CartService;
+import com.example.demo.services.OrderSubmissionPipeline;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Submits orders through the asynchronous pipeline with a single writer, which is held inside its first commit
+ * until further submissions have queued up behind it, and checks that those are committed as one group, and that a
+ * cart changed while its submission was queued is not ordered.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-pipeline;DB_CLOSE_DELAY=-1",
+        "order.async.enabled=true",
+        "order.async.writer-threads=1",
+        "order.async.max-batch-size=20"})
+public class OrderPipelineTest {
+    private static final int QUEUED_ORDERS = 10;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private CartController cartController;
+
+    @SpyBean
+    private CartService cartService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final CountDownLatch writerBlocked = new CountDownLatch(1);
+
+    private final CountDownLatch releaseWriter = new CountDownLatch(1);
+
+    @After
+    public void release() {
+        releaseWriter.countDown();
+    }
+
+    @Test
+    public void queuedOrdersAreCommittedAsOneGroup() throws Exception {
+        // setup
+        Item item = fixtures.createItem("rice", "2.50");
+        List<User> users = createUsersWithCarts("group", QUEUED_ORDERS + 1, item);
+        holdFirstGroupCommit(false);
+        double batchesBefore = batchSizes().count();
+        double ordersBefore = batchSizes().totalAmount();
+
+        // execute
+        List<ResponseEntity<OrderStatusResponse>> responses = submitWhileWriterIsHeld(users);
+
+        // compare
+        for (int i = 0; i < users.size(); i++) {
+            Assert.assertEquals(HttpStatus.ACCEPTED, responses.get(i).getStatusCode());
+            Assert.assertEquals(OrderStatusResponse.Status.QUEUED, responses.get(i).getBody().getStatus());
+            Assert.assertEquals("/api/order/status/" + users.get(i).getUsername() + "/"
+                    + responses.get(i).getBody().getOrderId(), responses.get(i).getHeaders().getLocation().toString());
+            assertCompleted(users.get(i), i + 1, responses.get(i).getBody().getOrderId());
+        }
+        Assert.assertEquals(2, batchSizes().count() - batchesBefore, 0);
+        Assert.assertEquals(QUEUED_ORDERS + 1, batchSizes().totalAmount() - ordersBefore, 0);
+        Assert.assertEquals(QUEUED_ORDERS, batchSizes().max(), 0);
+    }
+
+    @Test
+    public void failedGroupIsCommittedOneAtATime() throws Exception {
+        // setup
+        Item item = fixtures.createItem("bean", "1.00");
+        List<User> users = createUsersWithCarts("fallback", QUEUED_ORDERS + 1, item);
+        holdFirstGroupCommit(true);
+        double groupFailuresBefore = meterRegistry.get("order.pipeline.group_failures").functionCounter().count();
+
+        // execute
+        List<ResponseEntity<OrderStatusResponse>> responses = submitWhileWriterIsHeld(users);
+
+        // compare
+        for (int i = 0; i < users.size(); i++) {
+            assertCompleted(users.get(i), i + 1, responses.get(i).getBody().getOrderId());
+        }
+        Assert.assertEquals(1, meterRegistry.get("order.pipeline.group_failures").functionCounter().count()
+                - groupFailuresBefore, 0);
+    }
+
+    @Test
+    public void cartChangedWhileQueuedFailsInGroup() throws Exception {
+        changedCartIsNotOrdered("changed-group", false);
+    }
+
+    @Test
+    public void cartChangedWhileQueuedFailsOneAtATime() throws Exception {
+        changedCartIsNotOrdered("changed-single", true);
+    }
+
+    @Test
+    public void statusOfUnknownOrderOrOtherUserIsNotFound() throws Exception {
+        // setup
+        Item item = fixtures.createItem("tea", "4.00");
+        User user = createUsersWithCarts("owner", 1, item).get(0);
+        ResponseEntity<OrderStatusResponse> submitted = orderController.submitAsync(user.getUsername(), null);
+        long orderId = submitted.getBody().getOrderId();
+        assertCompleted(user, 1, orderId);
+
+        // execute
+        ResponseEntity<OrderStatusResponse> otherUser = orderController.getStatus("someone-else", orderId);
+        ResponseEntity<OrderStatusResponse> unknown = orderController.getStatus(user.getUsername(), orderId + 1);
+
+        // compare
+        Assert.assertEquals(HttpStatus.NOT_FOUND, otherUser.getStatusCode());
+        Assert.assertEquals(HttpStatus.NOT_FOUND, unknown.getStatusCode());
+    }
+
+    /**
+     * Queues three submissions behind a held writer, adds to the second user's cart before releasing it, and
+     * checks that only the other two are ordered, with the group commit going through or, with
+     * {@code failGroup}, falling back to one commit per order.
+     */
+    private void changedCartIsNotOrdered(String prefix, boolean failGroup) throws Exception {
+        // setup
+        Item item = fixtures.createItem(prefix + "-item", "3.00");
+        List<User> users = createUsersWithCarts(prefix, 3, item);
+        holdFirstGroupCommit(failGroup);
+        List<ResponseEntity<OrderStatusResponse>> responses = new ArrayList<>();
+        responses.add(orderController.submitAsync(users.get(0).getUsername(), null));
+        Assert.assertTrue(writerBlocked.await(10, TimeUnit.SECONDS));
+        responses.add(orderController.submitAsync(users.get(1).getUsername(), null));
+        responses.add(orderController.submitAsync(users.get(2).getUsername(), null));
+
+        // execute
+        ModifyCartRequest addedLater = new ModifyCartRequest();
+        addedLater.setUsername(users.get(1).getUsername());
+        addedLater.setItemId(item.getId());
+        addedLater.setQuantity(5);
+        Assert.assertEquals(HttpStatus.OK, cartController.addTocart(addedLater, null).getStatusCode());
+        releaseWriter.countDown();
+
+        // compare
+        Assert.assertEquals(HttpStatus.ACCEPTED, responses.get(1).getStatusCode());
+        assertCompleted(users.get(0), 1, responses.get(0).getBody().getOrderId());
+        assertCompleted(users.get(2), 3, responses.get(2).getBody().getOrderId());
+        OrderStatusResponse status = awaitCompletion(users.get(1).getUsername(), responses.get(1).getBody().getOrderId());
+        Assert.assertEquals(OrderStatusResponse.Status.FAILED, status.getStatus());
+        Assert.assertEquals(OrderSubmissionPipeline.CART_CHANGED, status.getError());
+        Assert.assertNull(status.getOrder());
+        Assert.assertTrue(orderController.getOrdersForUser(users.get(1).getUsername(), 0L, null).getBody().isEmpty());
+        Cart cart = fixtures.findCart(users.get(1).getCart().getId());
+        Assert.assertEquals(7, cart.getLine(item.getId()).getQuantity());
+        Assert.assertEquals(2100, cart.getTotalMinor());
+    }
+
+    /**
+     * Makes the writer's first group commit wait until the test releases it, then proceed or, with
+     * {@code fail}, roll back with an exception.
+     */
+    private void holdFirstGroupCommit(boolean fail) {
+        AtomicBoolean first = new AtomicBoolean(true);
+        Mockito.doAnswer(invocation -> {
+            if (first.getAndSet(false)) {
+                writerBlocked.countDown();
+                Assert.assertTrue(releaseWriter.await(10, TimeUnit.SECONDS));
+                if (fail) {
+                    throw new IllegalStateException("group commit failed");
+                }
+            }
+            return invocation.callRealMethod();
+        }).when(cartService).checkoutAll(Mockito.any(), Mockito.any());
+    }
+
+    /**
+     * Submits the first user's order, waits for the writer to pick it up and get held, queues the others, then
+     * releases the writer.
+     */
+    private List<ResponseEntity<OrderStatusResponse>> submitWhileWriterIsHeld(List<User> users)
+            throws InterruptedException {
+        List<ResponseEntity<OrderStatusResponse>> responses = new ArrayList<>();
+        responses.add(orderController.submitAsync(users.get(0).getUsername(), null));
+        Assert.assertTrue(writerBlocked.await(10, TimeUnit.SECONDS));
+        for (User user : users.subList(1, users.size())) {
+            responses.add(orderController.submitAsync(user.getUsername(), null));
+        }
+        releaseWriter.countDown();
+        return responses;
+    }
+
+    private void assertCompleted(User user, int quantity, long orderId) throws InterruptedException {
+        OrderStatusResponse status = awaitCompletion(user.getUsername(), orderId);
+        Assert.assertEquals(OrderStatusResponse.Status.COMPLETED, status.getStatus());
+        OrderResponse order = status.getOrder();
+        Assert.assertEquals(orderId, order.getId());
+        Assert.assertEquals(1, order.getLines().size());
+        Assert.assertEquals(quantity, order.getLines().get(0).getQuantity());
+        List<OrderResponse> history = orderController.getOrdersForUser(user.getUsername(), 0L, null).getBody();
+        Assert.assertEquals(1, history.size());
+        Assert.assertEquals(order.getId(), history.get(0).getId());
+        Cart cart = fixtures.findCart(user.getCart().getId());
+        Assert.assertEquals(0, cart.getLines().size());
+        Assert.assertEquals(0, cart.getTotalMinor());
+    }
+
+    private OrderStatusResponse awaitCompletion(String username, long orderId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (true) {
+            ResponseEntity<OrderStatusResponse> responseEntity = orderController.getStatus(username, orderId);
+            Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+            OrderStatusResponse status = responseEntity.getBody();
+            if (status.getStatus() != OrderStatusResponse.Status.QUEUED) {
+                return status;
+            }
+            Assert.assertTrue("order was not committed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private DistributionSummary batchSizes() {
+        return meterRegistry.get("order.pipeline.commit.batch_size").summary();
+    }
+
+    /**
+     * Creates users whose carts hold 1, 2, 3, ... units of the item.
+     */
+    private List<User> createUsersWithCarts(String prefix, int count, Item item) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = fixtures.createUser(prefix + i);
+            ModifyCartRequest request = new ModifyCartRequest();
+            request.setUsername(user.getUsername());
+            request.setItemId(item.getId());
+            request.setQuantity(i + 1);
+            cartController.addTocart(request, null);
+            users.add(user);
+        }
+        return users;
+    }
+}
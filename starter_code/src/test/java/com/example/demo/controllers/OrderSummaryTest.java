@@ -0,0 +1,131 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserOrderSummaryRepository;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.OrderResponse;
+import com.example.demo.model.responses.OrderSummaryResponse;
+import com.example.demo.services.OrderSummaryService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Places orders against a real database and checks the summaries maintained alongside them, and that a rebuild in
+ * batches smaller than the number of users recomputes the same summaries from the orders.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-summary;DB_CLOSE_DELAY=-1",
+        "order.summary.rebuild-batch-size=2"})
+public class OrderSummaryTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private CartController cartController;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private UserOrderSummaryRepository userOrderSummaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void summaryTracksPlacedOrders() {
+        // setup
+        User user = fixtures.createUser("tracked");
+        Item item = fixtures.createItem("rice", "2.50");
+        long before = System.currentTimeMillis();
+
+        // execute
+        placeOrder(user, item, 2);
+        placeOrder(user, item, 3);
+        long after = System.currentTimeMillis();
+        ResponseEntity<OrderSummaryResponse> responseEntity = orderController.getSummary("tracked");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        Assert.assertEquals(2, responseEntity.getBody().getOrderCount());
+        Assert.assertEquals(new BigDecimal("12.50"), responseEntity.getBody().getTotalSpent());
+        long lastOrderAt = responseEntity.getBody().getLastOrderAt();
+        Assert.assertTrue(lastOrderAt >= before && lastOrderAt <= after);
+    }
+
+    @Test
+    public void userWithoutOrdersHasEmptySummary() {
+        // setup
+        fixtures.createUser("no-orders");
+
+        // execute
+        ResponseEntity<OrderSummaryResponse> responseEntity = orderController.getSummary("no-orders");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        Assert.assertEquals(0, responseEntity.getBody().getOrderCount());
+        Assert.assertEquals(new BigDecimal("0.00"), responseEntity.getBody().getTotalSpent());
+        Assert.assertNull(responseEntity.getBody().getLastOrderAt());
+    }
+
+    @Test
+    public void rebuildRecomputesSummariesFromOrders() {
+        // setup
+        Item item = fixtures.createItem("bean", "1.00");
+        List<User> users = new ArrayList<>();
+        List<OrderSummaryResponse> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = fixtures.createUser("rebuilt" + i);
+            for (int order = 0; order < i; order++) {
+                placeOrder(user, item, order + 1);
+            }
+            users.add(user);
+            expected.add(orderController.getSummary(user.getUsername()).getBody());
+        }
+        // an order placed before creation times were recorded, and summaries that were never written
+        long legacyOrderId = placeOrder(users.get(1), item, 4).getId();
+        jdbcTemplate.update("UPDATE USER_ORDER SET CREATED_AT = NULL WHERE ID = ?", legacyOrderId);
+        expected.set(1, new OrderSummaryResponse(2, new BigDecimal("5.00"), expected.get(1).getLastOrderAt()));
+        userOrderSummaryRepository.deleteAll();
+
+        // execute
+        int processed = orderSummaryService.rebuild();
+
+        // compare
+        Assert.assertTrue(processed >= users.size());
+        for (int i = 0; i < users.size(); i++) {
+            OrderSummaryResponse summary = orderController.getSummary(users.get(i).getUsername()).getBody();
+            Assert.assertEquals(expected.get(i).getOrderCount(), summary.getOrderCount());
+            Assert.assertEquals(expected.get(i).getTotalSpent(), summary.getTotalSpent());
+            Assert.assertEquals(expected.get(i).getLastOrderAt(), summary.getLastOrderAt());
+        }
+        Assert.assertFalse(userOrderSummaryRepository.existsById(users.get(0).getId()));
+    }
+
+    private OrderResponse placeOrder(User user, Item item, int quantity) {
+        ModifyCartRequest request = new ModifyCartRequest();
+        request.setUsername(user.getUsername());
+        request.setItemId(item.getId());
+        request.setQuantity(quantity);
+        cartController.addTocart(request, null);
+        return orderController.submit(user.getUsername(), null).getBody();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.controllers;
+
+import com.example.demo.configuration.TunableBCryptPasswordEncoder;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.LoginRequest;
+import com.example.demo.services.UserCache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs in with hashes that no longer match the configured encoding and checks that they are replaced and that the
+ * cached user picks up the new hash.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:password-upgrade;DB_CLOSE_DELAY=-1",
+        "security.password.bcrypt-strength=4",
+        "security.password.delegating-encoder=true"})
+public class PasswordUpgradeTest {
+    private static final String PASSWORD = "testPassword";
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private LoginController loginController;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Test
+    public void legacyUnprefixedHashIsUpgraded() throws Exception {
+        // setup
+        storeUser("legacy", new BCryptPasswordEncoder(5).encode(PASSWORD));
+
+        // execute
+        ResponseEntity<?> response = login("legacy");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+        String stored = userRepository.findByUsername("legacy").getPassword();
+        Assert.assertTrue(stored.startsWith("{bcrypt}"));
+        Assert.assertEquals(4, TunableBCryptPasswordEncoder.costOf(stored.substring("{bcrypt}".length())));
+        Assert.assertEquals(stored, userCache.findByUsername("legacy").getPassword());
+        Assert.assertEquals(HttpStatus.OK, login("legacy").getStatusCode());
+        Assert.assertEquals(stored, userRepository.findByUsername("legacy").getPassword());
+    }
+
+    @Test
+    public void hashWithOtherCostIsUpgraded() throws Exception {
+        // setup
+        storeUser("costly", "{bcrypt}" + new BCryptPasswordEncoder(5).encode(PASSWORD));
+
+        // execute
+        ResponseEntity<?> response = login("costly");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+        String stored = userRepository.findByUsername("costly").getPassword();
+        Assert.assertTrue(stored.startsWith("{bcrypt}$2a$04$"));
+        Assert.assertEquals(stored, userCache.findByUsername("costly").getPassword());
+    }
+
+    @Test
+    public void failedLoginKeepsHash() throws Exception {
+        // setup
+        String legacy = new BCryptPasswordEncoder(5).encode(PASSWORD);
+        storeUser("mistyped", legacy);
+        LoginRequest request = new LoginRequest("mistyped", "wrongPassword");
+
+        // execute
+        ResponseEntity<?> response = loginController.login(request, new MockHttpServletRequest())
+                .get(30, TimeUnit.SECONDS);
+
+        // compare
+        Assert.assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        Assert.assertEquals(legacy, userRepository.findByUsername("mistyped").getPassword());
+    }
+
+    /**
+     * Stores the user with {@code hash} and loads it into the user cache, as a previous request would have.
+     */
+    private void storeUser(String username, String hash) {
+        User user = fixtures.createUser(username);
+        user.setPassword(hash);
+        userRepository.save(user);
+        userCache.invalidate(username);
+        Assert.assertEquals(hash, userCache.findByUsername(username).getPassword());
+    }
+
+    private ResponseEntity<?> login(String username) throws Exception {
+        LoginRequest request = new LoginRequest(username, PASSWORD);
+        return loginController.login(request, new MockHttpServletRequest()).get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.ItemSalesResponse;
+import com.example.demo.services.SalesAnalyticsService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Places orders against a real database and ranks the items sold, from the counters recorded as the orders are
+ * committed and from counters rebuilt from the stored orders.
+ */
+@RunWith(SpringRunner.class)
+@Import(TestFixtures.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:integration;DB_CLOSE_DELAY=-1")
+public class SalesAnalyticsTest {
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private AdminController adminController;
+
+    @Autowired
+    private CartController cartController;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void topItemsAreRankedByRevenueOrUnits() {
+        // setup
+        User user = fixtures.createUser("ranked");
+        Item watch = fixtures.createItem("watch", "100.00");
+        Item pen = fixtures.createItem("pen", "1.00");
+        Item book = fixtures.createItem("book", "15.00");
+        placeOrder(user, watch, 1);
+        placeOrder(user, pen, 30);
+        placeOrder(user, book, 2);
+        placeOrder(user, book, 3);
+
+        // execute
+        ResponseEntity<List<ItemSalesResponse>> byRevenue = adminController.getTopItems(100, 60, "revenue");
+        ResponseEntity<List<ItemSalesResponse>> byUnits = adminController.getTopItems(100, null, "units");
+
+        // compare
+        Assert.assertEquals(HttpStatus.OK, byRevenue.getStatusCode());
+        List<ItemSalesResponse> revenue = only(byRevenue.getBody(), watch, pen, book);
+        Assert.assertEquals(Arrays.asList("watch", "book", "pen"), names(revenue));
+        Assert.assertEquals(new BigDecimal("75.00"), revenue.get(1).getRevenue());
+        Assert.assertEquals(5, revenue.get(1).getUnitsSold());
+        List<ItemSalesResponse> units = only(byUnits.getBody(), watch, pen, book);
+        Assert.assertEquals(Arrays.asList("pen", "book", "watch"), names(units));
+        Assert.assertEquals(30, units.get(0).getUnitsSold());
+    }
+
+    @Test
+    public void rebuildRestoresCountersFromOrders() {
+        // setup
+        User user = fixtures.createUser("rebuilt");
+        Item old = fixtures.createItem("old", "3.00");
+        Item recent = fixtures.createItem("recent", "2.00");
+        long oldOrderId = placeOrder(user, old, 4);
+        placeOrder(user, recent, 1);
+        jdbcTemplate.update("UPDATE USER_ORDER SET CREATED_AT = ? WHERE ID = ?",
+                System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2), oldOrderId);
+        List<ItemSalesResponse> before = only(adminController.getTopItems(100, null, "revenue").getBody(), old, recent);
+
+        // execute
+        salesAnalyticsService.rebuild();
+
+        // compare
+        List<ItemSalesResponse> allTime = only(adminController.getTopItems(100, null, "revenue").getBody(), old, recent);
+        Assert.assertEquals(names(before), names(allTime));
+        Assert.assertEquals(before.get(0).getRevenue(), allTime.get(0).getRevenue());
+        Assert.assertEquals(new BigDecimal("12.00"), allTime.get(0).getRevenue());
+        List<ItemSalesResponse> lastHour = only(adminController.getTopItems(100, 60, "revenue").getBody(), old, recent);
+        Assert.assertEquals(Arrays.asList("recent"), names(lastHour));
+        List<ItemSalesResponse> lastHours = only(adminController.getTopItems(100, 180, "revenue").getBody(), old, recent);
+        Assert.assertEquals(Arrays.asList("old", "recent"), names(lastHours));
+    }
+
+    @Test
+    public void invalidRequestsAreRejected() {
+        // execute
+        ResponseEntity<List<ItemSalesResponse>> unknownMetric = adminController.getTopItems(10, null, "profit");
+        ResponseEntity<List<ItemSalesResponse>> tooLong = adminController.getTopItems(10, 60 * 24 * 365, "units");
+        ResponseEntity<List<ItemSalesResponse>> empty = adminController.getTopItems(10, 0, "units");
+
+        // compare
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, unknownMetric.getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, tooLong.getStatusCode());
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, empty.getStatusCode());
+    }
+
+    /**
+     * Keeps the entries of the given items, which other tests' items may be ranked among.
+     */
+    private List<ItemSalesResponse> only(List<ItemSalesResponse> ranking, Item... items) {
+        List<ItemSalesResponse> kept = new ArrayList<>();
+        for (ItemSalesResponse entry : ranking) {
+            for (Item item : items) {
+                if (item.getId() == entry.getItemId()) {
+                    kept.add(entry);
+                }
+            }
+        }
+        return kept;
+    }
+
+    private List<String> names(List<ItemSalesResponse> ranking) {
+        List<String> names = new ArrayList<>();
+        for (ItemSalesResponse entry : ranking) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private long placeOrder(User user, Item item, int quantity) {
+        ModifyCartRequest request = new ModifyCartRequest();
+        request.setUsername(user.getUsername());
+        request.setItemId(item.getId());
+        request.setQuantity(quantity);
+        cartController.addTocart(request, null);
+        return orderController.submit(user.getUsername(), null).getBody().getId();
+    }
+}
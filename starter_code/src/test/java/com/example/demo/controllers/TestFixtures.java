@@ -0,0 +1,65 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestComponent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.math.BigDecimal;
+
+/**
+ * Stores the users and items the integration tests start from. Imported by each test with
+ * {@code @Import(TestFixtures.class)}.
+ */
+@TestComponent
+public class TestFixtures {
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * @return a saved user with an empty cart
+     */
+    public User createUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("unused");
+        user.setCart(new Cart());
+        return userRepository.save(user);
+    }
+
+    /**
+     * @return a saved item described by its name
+     */
+    public Item createItem(String name, String price) {
+        return createItem(name, name, price);
+    }
+
+    public Item createItem(String name, String description, String price) {
+        Item item = new Item();
+        item.setName(name);
+        item.setDescription(description);
+        item.setPrice(new BigDecimal(price));
+        return itemRepository.save(item);
+    }
+
+    /**
+     * @return the stored cart with its lines loaded
+     */
+    public Cart findCart(long cartId) {
+        return entityManager
+                .createQuery("select distinct c from Cart c left join fetch c.lines where c.id = :id", Cart.class)
+                .setParameter("id", cartId)
+                .getSingleResult();
+    }
+}
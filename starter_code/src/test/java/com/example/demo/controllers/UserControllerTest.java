@@ -1,23 +1,30 @@
 package com.example.demo.controllers;
 
-import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.responses.UserResponse;
+import com.example.demo.services.PasswordHashingService;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSnapshot;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -29,10 +36,20 @@ public class UserControllerTest {
     private UserRepository userRepository;
 
     @Mock
-    private CartRepository cartRepository;
+    private PasswordHashingService passwordHashingService;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private UserCache userCache;
+
+    private final AtomicInteger executorTasks = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(userController, "taskExecutor", (Executor) task -> {
+            executorTasks.incrementAndGet();
+            task.run();
+        });
+    }
 
     @Test
     public void createUserShortPassword() {
@@ -44,7 +61,7 @@ public class UserControllerTest {
             createUserRequest.setPasswordConfirmation("khanh");
 
             // execute
-            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest);
+            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest).join();
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -65,7 +82,7 @@ public class UserControllerTest {
             createUserRequest.setPasswordConfirmation("khanh124");
 
             // execute
-            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest);
+            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest).join();
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -87,9 +104,9 @@ public class UserControllerTest {
             User user = new User();
             user.setUsername("khanh");
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
             // execute
-            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest);
+            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest).join();
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -108,22 +125,25 @@ public class UserControllerTest {
             createUserRequest.setUsername("khanh");
             createUserRequest.setPassword("khanh123");
             createUserRequest.setPasswordConfirmation("khanh123");
-            Cart cart = new Cart();
 
-            Mockito.doReturn(null).when(userRepository).findByUsername("khanh");
-            Mockito.doReturn(cart).when(cartRepository).save(cart);
-            Mockito.doReturn("abc").when(passwordEncoder).encode(createUserRequest.getPassword());
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh");
+            Mockito.doReturn(CompletableFuture.completedFuture("abc")).when(passwordHashingService).encode(createUserRequest.getPassword());
 
             // execute
-            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest);
+            ResponseEntity<?> responseEntity = userController.createUser(createUserRequest).join();
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
-            User responseUser = (User) responseEntity.getBody();
+            UserResponse responseUser = (UserResponse) responseEntity.getBody();
             Assert.assertEquals(0, responseUser.getId());
             Assert.assertEquals("khanh", responseUser.getUsername());
-            Assert.assertEquals("abc", responseUser.getPassword());
+            ArgumentCaptor<User> saved = ArgumentCaptor.forClass(User.class);
+            Mockito.verify(userRepository).save(saved.capture());
+            Assert.assertEquals("abc", saved.getValue().getPassword());
+            Assert.assertNotNull(saved.getValue().getCart());
+            // the user is saved on the task executor, not on the hashing pool
+            Assert.assertEquals(1, executorTasks.get());
         } catch (Exception ex) {
             throw ex;
         }
@@ -133,19 +153,19 @@ public class UserControllerTest {
     public void findUserById() {
         try {
             // setup
-            Optional<User> user = createTestUser();
+            Optional<UserResponse> user = Optional.of(new UserResponse(1, "khanh", 2L));
 
-            Mockito.doReturn(user).when(userRepository).findById(1L);
+            Mockito.doReturn(user).when(userRepository).findResponseById(1L);
 
             // execute
-            ResponseEntity<User> responseEntity = userController.findById(user.get().getId());
+            ResponseEntity<UserResponse> responseEntity = userController.findById(user.get().getId());
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
             Assert.assertEquals(1, responseEntity.getBody().getId());
             Assert.assertEquals("khanh", responseEntity.getBody().getUsername());
-            Assert.assertEquals("khanh", responseEntity.getBody().getPassword());
+            Assert.assertEquals(2L, responseEntity.getBody().getCartId().longValue());
         } catch (Exception ex) {
             throw ex;
         }
@@ -157,10 +177,10 @@ public class UserControllerTest {
             // setup
             Optional<User> user = createTestUser();
 
-            Mockito.doReturn(null).when(userRepository).findById(0L);
+            Mockito.doReturn(Optional.empty()).when(userRepository).findResponseById(1L);
 
             // execute
-            ResponseEntity<User> responseEntity = userController.findById(user.get().getId());
+            ResponseEntity<UserResponse> responseEntity = userController.findById(user.get().getId());
 
             // compare
             Assert.assertNotNull(responseEntity);
@@ -179,17 +199,16 @@ public class UserControllerTest {
             user.setUsername("khanh");
             user.setPassword("khanh");
 
-            Mockito.doReturn(user).when(userRepository).findByUsername("khanh");
+            Mockito.doReturn(UserSnapshot.of(user)).when(userCache).findByUsername("khanh");
 
             // execute
-            ResponseEntity<User> responseEntity = userController.findByUserName(user.getUsername());
+            ResponseEntity<UserResponse> responseEntity = userController.findByUserName(user.getUsername());
 
             // compare
             Assert.assertNotNull(responseEntity);
             Assert.assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
             Assert.assertEquals(1, responseEntity.getBody().getId());
             Assert.assertEquals("khanh", responseEntity.getBody().getUsername());
-            Assert.assertEquals("khanh", responseEntity.getBody().getPassword());
         } catch (Exception ex) {
             throw ex;
         }
@@ -204,10 +223,10 @@ public class UserControllerTest {
             user.setUsername("khanh");
             user.setPassword("khanh");
 
-            Mockito.doReturn(null).when(userRepository).findByUsername("khanh1");
+            Mockito.doReturn(null).when(userCache).findByUsername("khanh1");
 
             // execute
-            ResponseEntity<User> responseEntity = userController.findByUserName(user.getUsername());
+            ResponseEntity<UserResponse> responseEntity = userController.findByUserName(user.getUsername());
 
             // compare
             Assert.assertNotNull(responseEntity);